@@ -378,8 +378,8 @@ public class RunSelfEquivalenceExp {
 			solverTimeSAFA = Timers.getSolver() + solverTimeSAFAIntersect;
 			subTimeSAFA = Timers.getSubsumption() + subTimeSAFAIntersect;
 			
-			exploredStatesSAFA = Timers.exploredStates;
-			successfulSubsumptionsSAFA = Timers.successfulSubs;
+			exploredStatesSAFA = Timers.getExploredStates();
+			successfulSubsumptionsSAFA = Timers.getSuccessfulSubs();
 
 		} catch (TimeoutException e) {
 			fullTimeSAFA = timeOut;
@@ -410,7 +410,7 @@ public class RunSelfEquivalenceExp {
 			endDate = System.currentTimeMillis();
 			totalTimeLeft -= endDate - startDate;
 			totalTimeSFA = timeOut-totalTimeLeft;
-			exploredStatesSFA = Timers.exploredStates;
+			exploredStatesSFA = Timers.getExploredStates();
 		} catch (Exception e) {
 			totalTimeSFA = timeOut;
 			exploredStatesSFA = -1;
@@ -416,8 +416,8 @@ public class findLongEquivalenceExp {
 			solverTimeSAFA = Timers.getSolver() + solverTimeSAFAIntersect;
 			subTimeSAFA = Timers.getSubsumption() + subTimeSAFAIntersect;
 			
-			exploredStatesSAFA = Timers.exploredStates;
-			successfulSubsumptionsSAFA = Timers.successfulSubs;
+			exploredStatesSAFA = Timers.getExploredStates();
+			successfulSubsumptionsSAFA = Timers.getSuccessfulSubs();
 
 		} catch (TimeoutException e) {
 			System.err.println("Timeout in SAFA");
@@ -450,7 +450,7 @@ public class findLongEquivalenceExp {
 			endDate = System.currentTimeMillis();
 			totalTimeLeft -= endDate - startDate;
 			totalTimeSFA = timeOut-totalTimeLeft;
-			exploredStatesSFA = Timers.exploredStates;
+			exploredStatesSFA = Timers.getExploredStates();
 		} 
 		catch (TimeoutException e) {
 			System.err.println("Timeout in SFA");
@@ -0,0 +1,52 @@
+package benchmark.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import automata.sfa.SFA;
+import benchmark.SFAprovider;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+/**
+ * Loads the regexlib corpora of SVPABenchmark and converts them to SFAs. The
+ * directory containing the corpora can be set with the system property
+ * <code>corpus.dir</code>.
+ */
+class RegexCorpus {
+
+	static final String CORPUS_DIR = System.getProperty("corpus.dir",
+			"../SVPABenchmark/src/benchmark/regexconverter");
+
+	/**
+	 * @return the SFAs of the first <code>size</code> regexes of
+	 *         <code>corpus</code> that can be parsed and have at most
+	 *         <code>maxStates</code> states
+	 */
+	static List<SFA<CharPred, Character>> load(String corpus, int size, int maxStates,
+			UnaryCharIntervalSolver solver) throws IOException {
+		List<String> regexes = Files.readAllLines(new File(CORPUS_DIR, corpus).toPath(), StandardCharsets.UTF_8);
+
+		List<SFA<CharPred, Character>> sfas = new ArrayList<SFA<CharPred, Character>>();
+		for (String regex : regexes) {
+			if (sfas.size() == size)
+				break;
+			SFA<CharPred, Character> sfa;
+			try {
+				sfa = new SFAprovider(regex, solver).getSFA();
+			} catch (RuntimeException e) {
+				// unsupported regex syntax
+				continue;
+			}
+			if (sfa != null && sfa.stateCount() <= maxStates)
+				sfas.add(sfa);
+		}
+		if (sfas.isEmpty())
+			throw new IllegalStateException("No usable regex in " + corpus);
+		return sfas;
+	}
+}
@@ -0,0 +1,94 @@
+package benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sat4j.specs.TimeoutException;
+
+import automata.safa.SAFA;
+import automata.sfa.SFA;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+/**
+ * Benchmarks of the SAFA algorithms on the regexlib corpora. Every invocation
+ * runs the operation on the whole sample, so scores are per sample. Run with
+ * <code>-prof gc</code> to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class SAFABenchmark {
+
+	@Param({ "pattern@75.txt", "regexlib-SFA.txt" })
+	public String corpus;
+
+	// number of regexes in the sample
+	@Param({ "50" })
+	public int size;
+
+	// regexes whose SFA is bigger are skipped
+	@Param({ "200" })
+	public int maxStates;
+
+	private UnaryCharIntervalSolver solver;
+	private List<SAFA<CharPred, Character>> safas;
+	private List<SAFA<CharPred, Character>> minSafas;
+	private List<SAFA<CharPred, Character>> acceptors;
+	private List<List<Character>> words;
+
+	@Setup
+	public void setup() throws Exception {
+		solver = new UnaryCharIntervalSolver();
+		List<SFA<CharPred, Character>> sfas = RegexCorpus.load(corpus, size, maxStates, solver);
+
+		safas = new ArrayList<SAFA<CharPred, Character>>();
+		minSafas = new ArrayList<SAFA<CharPred, Character>>();
+		acceptors = new ArrayList<SAFA<CharPred, Character>>();
+		words = new ArrayList<List<Character>>();
+		for (SFA<CharPred, Character> sfa : sfas) {
+			safas.add(sfa.getSAFA(solver));
+			minSafas.add(sfa.minimize(solver).getSAFA(solver));
+			List<Character> witness = sfa.getWitness(solver);
+			if (witness != null) {
+				acceptors.add(safas.get(safas.size() - 1));
+				words.add(witness);
+			}
+		}
+	}
+
+	/**
+	 * Equivalence of every automaton and its minimal version, the whole
+	 * relation has to be explored
+	 */
+	@Benchmark
+	public void isEquivalent(Blackhole bh) throws TimeoutException {
+		for (int i = 0; i < safas.size(); i++)
+			bh.consume(SAFA.isEquivalent(safas.get(i), minSafas.get(i), solver, SAFA.getBooleanExpressionFactory()));
+	}
+
+	/**
+	 * Membership of a witness of every automaton
+	 */
+	@Benchmark
+	public void accepts(Blackhole bh) throws TimeoutException {
+		for (int i = 0; i < words.size(); i++)
+			bh.consume(acceptors.get(i).accepts(words.get(i), solver));
+	}
+}
@@ -0,0 +1,97 @@
+package benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sat4j.specs.TimeoutException;
+
+import automata.sfa.SFA;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+/**
+ * Benchmarks of the SFA algorithms on the regexlib corpora. Every invocation
+ * runs the operation on the whole sample, so scores are per sample. Run with
+ * <code>-prof gc</code> to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class SFABenchmark {
+
+	@Param({ "pattern@75.txt", "regexlib-SFA.txt" })
+	public String corpus;
+
+	// number of regexes in the sample
+	@Param({ "50" })
+	public int size;
+
+	// regexes whose SFA is bigger are skipped
+	@Param({ "200" })
+	public int maxStates;
+
+	private UnaryCharIntervalSolver solver;
+	private List<SFA<CharPred, Character>> sfas;
+	private List<SFA<CharPred, Character>> dets;
+	private List<SFA<CharPred, Character>> mins;
+
+	@Setup
+	public void setup() throws Exception {
+		solver = new UnaryCharIntervalSolver();
+		sfas = RegexCorpus.load(corpus, size, maxStates, solver);
+
+		dets = new ArrayList<SFA<CharPred, Character>>();
+		mins = new ArrayList<SFA<CharPred, Character>>();
+		for (SFA<CharPred, Character> sfa : sfas) {
+			dets.add(sfa.determinize(solver));
+			mins.add(sfa.minimize(solver));
+		}
+	}
+
+	/**
+	 * Intersection of every pair of consecutive automata
+	 */
+	@Benchmark
+	public void intersection(Blackhole bh) throws TimeoutException {
+		for (int i = 0; i + 1 < sfas.size(); i++)
+			bh.consume(SFA.intersection(sfas.get(i), sfas.get(i + 1), solver, Long.MAX_VALUE));
+	}
+
+	@Benchmark
+	public void determinize(Blackhole bh) throws TimeoutException {
+		for (SFA<CharPred, Character> sfa : sfas)
+			bh.consume(SFA.determinize(sfa, solver, Long.MAX_VALUE));
+	}
+
+	@Benchmark
+	public void getMinimalOf(Blackhole bh) throws TimeoutException {
+		for (SFA<CharPred, Character> det : dets)
+			bh.consume(SFA.getMinimalOf(det, solver));
+	}
+
+	/**
+	 * Hopcroft-Karp equivalence of every deterministic automaton and its
+	 * minimal version
+	 */
+	@Benchmark
+	public void hopcroftKarpEquivalence(Blackhole bh) throws TimeoutException {
+		for (int i = 0; i < dets.size(); i++)
+			bh.consume(dets.get(i).isHopcroftKarpEquivalentTo(mins.get(i), solver));
+	}
+}
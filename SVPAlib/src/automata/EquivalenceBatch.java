@@ -0,0 +1,297 @@
+package automata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.safa.BooleanExpression;
+import automata.safa.BooleanExpressionFactory;
+import automata.safa.SAFA;
+import automata.safa.booleanexpression.PositiveBooleanExpression;
+import automata.sfa.SFA;
+import theory.BooleanAlgebra;
+import utilities.Deadline;
+import utilities.Pair;
+
+/**
+ * Runs batches of equivalence checks on an executor. Every check gets its own
+ * timeout and the results are delivered in completion order as soon as they
+ * are available.
+ *
+ * @param <A>
+ *            type of the automata
+ * @param <S>
+ *            domain of the automata alphabet
+ */
+public class EquivalenceBatch<A, S> {
+
+	/**
+	 * An equivalence check between two automata
+	 */
+	public interface EquivalenceCheck<A, S> {
+		/**
+		 * @return a pair (true, null) if the automata are equivalent, (false,
+		 *         w) otherwise, where w is a distinguishing word or null if
+		 *         the check does not compute it
+		 * @throws TimeoutException
+		 */
+		Pair<Boolean, List<S>> check(A left, A right, long timeout) throws TimeoutException;
+	}
+
+	public enum Outcome {
+		EQUIVALENT, NOT_EQUIVALENT, TIMEOUT, CANCELLED, FAILED
+	}
+
+	/**
+	 * Result of the check of the pair in position <code>index</code> of a
+	 * batch
+	 */
+	public static class Result<S> {
+		public final int index;
+		public final Outcome outcome;
+		// distinguishing word, null if not computed
+		public final List<S> witness;
+		// running time in milliseconds
+		public final long time;
+		// exception thrown by a FAILED check
+		public final Throwable error;
+
+		Result(int index, Outcome outcome, List<S> witness, long time, Throwable error) {
+			this.index = index;
+			this.outcome = outcome;
+			this.witness = witness;
+			this.time = time;
+			this.error = error;
+		}
+
+		@Override
+		public String toString() {
+			return index + ": " + outcome + (witness == null ? "" : " " + witness) + " (" + time + "ms)";
+		}
+	}
+
+	private final EquivalenceCheck<A, S> check;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final long timeout;
+
+	/**
+	 * Batches running <code>check</code> on <code>threads</code> threads with
+	 * a timeout of <code>timeout</code> milliseconds per pair
+	 */
+	public EquivalenceBatch(EquivalenceCheck<A, S> check, int threads, long timeout) {
+		this(check, Executors.newFixedThreadPool(threads), true, timeout);
+	}
+
+	/**
+	 * Batches running <code>check</code> on <code>executor</code>, which is
+	 * not shut down by {@link #shutdown()}
+	 */
+	public EquivalenceBatch(EquivalenceCheck<A, S> check, ExecutorService executor, long timeout) {
+		this(check, executor, false, timeout);
+	}
+
+	private EquivalenceBatch(EquivalenceCheck<A, S> check, ExecutorService executor, boolean ownsExecutor,
+			long timeout) {
+		this.check = check;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Schedules the checks of all the <code>pairs</code>. The automata are
+	 * shared by concurrent checks, so they must not be modified until the
+	 * batch completes. The checks build their SAFA expressions with the
+	 * factory of the calling thread.
+	 */
+	public Batch submit(List<Pair<A, A>> pairs) {
+		Batch batch = new Batch(pairs.size());
+		for (int i = 0; i < pairs.size(); i++)
+			batch.schedule(i, pairs.get(i).first, pairs.get(i).second);
+		return batch;
+	}
+
+	/**
+	 * Shuts down the executor if it was created by this object
+	 */
+	public void shutdown() {
+		if (ownsExecutor)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * The checks of a list of pairs. Iterating over a batch returns the
+	 * results in completion order, blocking until the next one is available.
+	 */
+	public class Batch implements Iterable<Result<S>> {
+
+		private final List<Task> tasks;
+		private final BlockingQueue<Result<S>> completed;
+		private final int size;
+		private int delivered;
+
+		// expression factory of the submitting thread, installed in the
+		// workers while they run a check
+		private final BooleanExpressionFactory<PositiveBooleanExpression> boolexpr;
+
+		private Batch(int size) {
+			this.size = size;
+			tasks = new ArrayList<Task>(size);
+			completed = new LinkedBlockingQueue<Result<S>>();
+			boolexpr = SAFA.getBooleanExpressionFactory();
+		}
+
+		private void schedule(int index, A left, A right) {
+			Task task = new Task(index, left, right, Deadline.NONE.withTimeout(Long.MAX_VALUE));
+			tasks.add(task);
+			executor.execute(task);
+		}
+
+		private class Task extends FutureTask<Result<S>> {
+			private final int index;
+			// cancelled together with the task, the check polls it
+			private final Deadline cancellation;
+
+			Task(int index, A left, A right, Deadline cancellation) {
+				super(() -> {
+					long start = System.currentTimeMillis();
+					BooleanExpressionFactory<PositiveBooleanExpression> previous = SAFA.getBooleanExpressionFactory();
+					SAFA.setBooleanExpressionFactory(boolexpr);
+					try {
+						Pair<Boolean, List<S>> res = cancellation.withTimeout(timeout)
+								.call(() -> check.check(left, right, timeout));
+						return new Result<S>(index, res.first ? Outcome.EQUIVALENT : Outcome.NOT_EQUIVALENT,
+								res.second, System.currentTimeMillis() - start, null);
+					} catch (TimeoutException e) {
+						return new Result<S>(index, Outcome.TIMEOUT, null, System.currentTimeMillis() - start, null);
+					} catch (Exception | Error e) {
+						return new Result<S>(index, Outcome.FAILED, null, System.currentTimeMillis() - start, e);
+					} finally {
+						SAFA.setBooleanExpressionFactory(previous);
+					}
+				});
+				this.index = index;
+				this.cancellation = cancellation;
+			}
+
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				cancellation.cancel();
+				return super.cancel(mayInterruptIfRunning);
+			}
+
+			@Override
+			protected void done() {
+				if (isCancelled()) {
+					completed.add(new Result<S>(index, Outcome.CANCELLED, null, 0, null));
+					return;
+				}
+				try {
+					completed.add(get());
+				} catch (Exception e) {
+					completed.add(new Result<S>(index, Outcome.FAILED, null, 0, e));
+				}
+			}
+		}
+
+		/**
+		 * @return the next completed result, null if all the results have
+		 *         been returned
+		 * @throws InterruptedException
+		 */
+		public synchronized Result<S> take() throws InterruptedException {
+			if (delivered == size)
+				return null;
+			Result<S> result = completed.take();
+			delivered++;
+			return result;
+		}
+
+		/**
+		 * Cancels the checks that did not complete, they are reported as
+		 * CANCELLED. Running checks stop at their next deadline check.
+		 */
+		public void cancel() {
+			for (Task task : tasks)
+				task.cancel(true);
+		}
+
+		/**
+		 * @return true iff all the checks completed
+		 */
+		public boolean isDone() {
+			for (Task task : tasks)
+				if (!task.isDone())
+					return false;
+			return true;
+		}
+
+		/**
+		 * @return number of pairs in the batch
+		 */
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Result<S>> iterator() {
+			return new Iterator<Result<S>>() {
+				@Override
+				public boolean hasNext() {
+					synchronized (Batch.this) {
+						return delivered < size;
+					}
+				}
+
+				@Override
+				public Result<S> next() {
+					try {
+						Result<S> result = take();
+						if (result == null)
+							throw new NoSuchElementException();
+						return result;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new NoSuchElementException("Interrupted");
+					}
+				}
+			};
+		}
+	}
+
+	// ------------------------------------------------------
+	// Checks
+	// ------------------------------------------------------
+
+	/**
+	 * Hopcroft-Karp equivalence of SFAs, no witness is computed
+	 */
+	public static <P, S> EquivalenceCheck<SFA<P, S>, S> sfaHopcroftKarp(BooleanAlgebra<P, S> ba) {
+		return (left, right, timeout) -> new Pair<Boolean, List<S>>(
+				left.isHopcroftKarpEquivalentTo(right, ba, timeout), null);
+	}
+
+	/**
+	 * Equivalence of SFAs with a distinguishing word
+	 */
+	public static <P, S> EquivalenceCheck<SFA<P, S>, S> sfaWithWitness(BooleanAlgebra<P, S> ba) {
+		return (left, right, timeout) -> SFA.areEquivalentPlusWitness(left, right, ba, timeout);
+	}
+
+	/**
+	 * Equivalence of SAFAs using bisimulation up to congruence
+	 */
+	public static <P, S, E extends BooleanExpression> EquivalenceCheck<SAFA<P, S>, S> safa(BooleanAlgebra<P, S> ba,
+			BooleanExpressionFactory<E> boolexpr) {
+		return (left, right, timeout) -> SAFA.isEquivalent(left, right, ba, boolexpr, timeout);
+	}
+}
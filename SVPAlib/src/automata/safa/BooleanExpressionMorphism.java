@@ -49,4 +49,11 @@ public class BooleanExpressionMorphism<R> implements LatticeMorphism<BooleanExpr
 	public void clear() {
 		cache.clear();
 	}
+
+	/**
+	 * @return number of expressions whose image is cached
+	 */
+	public int size() {
+		return cache.size();
+	}
 }
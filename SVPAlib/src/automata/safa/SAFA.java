@@ -7,6 +7,7 @@
 package automata.safa;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -30,8 +31,11 @@ import automata.sfa.SFA;
 import automata.sfa.SFAInputMove;
 import automata.sfa.SFAMove;
 import theory.BooleanAlgebra;
+import utilities.Deadline;
 import utilities.Pair;
-import utilities.Timers;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
+import utilities.Metrics.Timer;
 import utilities.UnionFindHopKarp;
 
 /**
@@ -49,7 +53,10 @@ public class SAFA<P, S> {
 	// Automata properties
 	// ------------------------------------------------------
 
-	private static BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = null;
+	// Factory used by the threads that did not set their own
+	private static final BooleanExpressionFactory<PositiveBooleanExpression> defaultBoolexpr = new PositiveBooleanExpressionFactory();
+
+	private static final ThreadLocal<BooleanExpressionFactory<PositiveBooleanExpression>> boolexpr = new ThreadLocal<BooleanExpressionFactory<PositiveBooleanExpression>>();
 
 	private PositiveBooleanExpression initialState;
 	private Collection<Integer> states;
@@ -57,6 +64,9 @@ public class SAFA<P, S> {
 
 	protected Map<Integer, Collection<SAFAInputMove<P, S>>> inputMovesFrom;
 
+	// Index of the moves by the states in their targets, built on demand
+	private volatile ReverseIndex<P, S> reverseIndex;
+
 	private Integer maxStateId;
 	private Integer transitionCount;
 
@@ -93,11 +103,27 @@ public class SAFA<P, S> {
 		return finalStates;
 	}
 
+	/**
+	 * @return the factory of the expressions of the SAFAs built by the current
+	 *         thread
+	 */
 	public static BooleanExpressionFactory<PositiveBooleanExpression> getBooleanExpressionFactory() {
-		if (boolexpr == null) {
-			boolexpr = new PositiveBooleanExpressionFactory();
-		}
-		return boolexpr;
+		BooleanExpressionFactory<PositiveBooleanExpression> factory = boolexpr.get();
+		return factory == null ? defaultBoolexpr : factory;
+	}
+
+	/**
+	 * Makes the current thread build the expressions of its SAFAs with
+	 * <code>factory</code> (the shared default one if <code>factory</code> is
+	 * null). Expressions are hash-consed per factory, so SAFAs built with
+	 * different factories must not be combined. Dropping a factory releases
+	 * all its expressions.
+	 */
+	public static void setBooleanExpressionFactory(BooleanExpressionFactory<PositiveBooleanExpression> factory) {
+		if (factory == null || factory == defaultBoolexpr)
+			boolexpr.remove();
+		else
+			boolexpr.set(factory);
 	}
 
 	// ------------------------------------------------------
@@ -170,6 +196,7 @@ public class SAFA<P, S> {
 		if (skipSatCheck || transition.isSatisfiable(ba)) {
 
 			transitionCount++;
+			reverseIndex = null;
 
 			if (transition.from > maxStateId)
 				maxStateId = transition.from;
@@ -425,11 +452,39 @@ public class SAFA<P, S> {
 					BooleanAlgebra<P, S> ba, BooleanExpressionFactory<E> boolexpr, long timeout)
 					throws TimeoutException {
 
-		Timers.setForCongruence();
-		Timers.startFull();
-		Timers.setTimeout(timeout);
+		return checkEquivalenceOfTwoConfigurations(aut, c1, c2, ba, boolexpr, new SATRelation(), timeout);
+	}
 
-		SAFARelation similar = new SATRelation();
+	/**
+	 * Checks whether laut and raut are equivalent using bisimulation up to
+	 * congruence. The congruence is computed in <code>similar</code>, which is
+	 * reset first: reusing the same relation across checks reuses the
+	 * encodings of the expressions and the state of the SAT solver.
+	 */
+	public static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> 
+			checkEquivalenceOfTwoConfigurations(
+					SAFA<P, S> aut,
+					PositiveBooleanExpression c1,
+					PositiveBooleanExpression c2,
+					BooleanAlgebra<P, S> ba, BooleanExpressionFactory<E> boolexpr, SATRelation similar, long timeout)
+					throws TimeoutException {
+
+		Metrics metrics = Metrics.begin("SAFA.checkEquivalenceOfTwoConfigurations");
+		metrics.setTimeout(timeout);
+		metrics.start(Timer.FULL);
+		try {
+			similar.reset();
+			return checkEquivalenceOfTwoConfigurations(aut, c1, c2, ba, boolexpr, similar, Deadline.after(timeout),
+					metrics);
+		} finally {
+			metrics.end();
+		}
+	}
+
+	private static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> checkEquivalenceOfTwoConfigurations(
+			SAFA<P, S> aut, PositiveBooleanExpression c1, PositiveBooleanExpression c2, BooleanAlgebra<P, S> ba,
+			BooleanExpressionFactory<E> boolexpr, SAFARelation similar, Deadline deadline, Metrics metrics)
+			throws TimeoutException {
 
 		PriorityQueue<Pair<Pair<E, E>, List<S>>> worklist = new PriorityQueue<>(new RelationComparator<>());
 
@@ -440,8 +495,8 @@ public class SAFA<P, S> {
 		similar.add(leftInitial, rightInitial);
 		worklist.add(new Pair<>(new Pair<>(leftInitial, rightInitial), new LinkedList<>()));
 		while (!worklist.isEmpty()) {
-			Timers.assertFullTO(timeout);
-			Timers.oneMoreState();
+			deadline.check();
+			metrics.increment(Counter.EXPLORED_STATES);
 
 			Pair<Pair<E, E>, List<S>> next = worklist.remove();
 
@@ -452,11 +507,11 @@ public class SAFA<P, S> {
 			P guard = ba.True();
 			boolean isSat = true;
 			do {
-				Timers.assertFullTO(timeout);
+				deadline.check();
 
-				Timers.startSolver();
+				metrics.start(Timer.SOLVER);
 				S model = ba.generateWitness(guard);
-				Timers.stopSolver();
+				metrics.stop(Timer.SOLVER);
 
 				P implicant = ba.True();
 				Map<Integer, E> move = new HashMap<>();
@@ -467,27 +522,27 @@ public class SAFA<P, S> {
 				for (Integer s : states) {
 					E succ = boolexpr.False();
 					for (SAFAInputMove<P, S> tr : aut.getInputMovesFrom(s)) {
-						Timers.assertFullTO(timeout);
+						deadline.check();
 
-						Timers.startSolver();
+						metrics.start(Timer.SOLVER);
 						boolean hm = ba.HasModel(tr.guard, model);
-						Timers.stopSolver();
+						metrics.stop(Timer.SOLVER);
 
 						if (hm) {
 							succ = boolexpr.MkOr(succ, coerce.apply(tr.to));
-							Timers.startSolver();
+							metrics.start(Timer.SOLVER);
 							implicant = ba.MkAnd(implicant, tr.guard);
-							Timers.stopSolver();
+							metrics.stop(Timer.SOLVER);
 						} else {
-							Timers.startSolver();
+							metrics.start(Timer.SOLVER);
 							implicant = ba.MkAnd(implicant, ba.MkNot(tr.guard));
-							Timers.stopSolver();
+							metrics.stop(Timer.SOLVER);
 						}
 					}
 					move.put(s, succ);
 				}
 
-				Timers.startSubsumption();
+				metrics.start(Timer.SUBSUMPTION);
 				E leftSucc = boolexpr.substitute((lit) -> move.get(lit)).apply(left);
 				E rightSucc = boolexpr.substitute((lit) -> move.get(lit)).apply(right);
 				List<S> succWitness = new LinkedList<>();
@@ -495,35 +550,35 @@ public class SAFA<P, S> {
 				succWitness.add(model);
 				
 				boolean checkIfDiff = leftSucc.hasModel(aut.finalStates) != rightSucc.hasModel(aut.finalStates);
-				Timers.stopSubsumption();
+				metrics.stop(Timer.SUBSUMPTION);
 
 				if (checkIfDiff) {
 					// leftSucc is accepting and rightSucc is rejecting or
 					// vice versa
-					Timers.stopFull();
+					metrics.stop(Timer.FULL);
 					return new Pair<>(false, succWitness);
 				} else{ 
-					Timers.startSubsumption();
+					metrics.start(Timer.SUBSUMPTION);
 					if (!similar.isMember(leftSucc, rightSucc)) {
 						if (!similar.add(leftSucc, rightSucc)) {
-							Timers.stopSubsumption();
-							Timers.stopFull();
+							metrics.stop(Timer.SUBSUMPTION);
+							metrics.stop(Timer.FULL);
 							return new Pair<>(false, succWitness);
 						}
 						worklist.add(new Pair<>(new Pair<>(leftSucc, rightSucc), succWitness));
 					}else{
-						Timers.oneMoreSub();
+						metrics.increment(Counter.SUCCESSFUL_SUBSUMPTIONS);
 					}
-					Timers.stopSubsumption();
+					metrics.stop(Timer.SUBSUMPTION);
 				}
-				Timers.startSolver();
+				metrics.start(Timer.SOLVER);
 				guard = ba.MkAnd(guard, ba.MkNot(implicant));
 				
 				isSat =  ba.IsSatisfiable(guard);
-				Timers.stopSolver();
+				metrics.stop(Timer.SOLVER);
 			} while (isSat);
 		}
-		Timers.stopFull();
+		metrics.stop(Timer.FULL);
 		return new Pair<>(true, null);
 	}
 
@@ -534,8 +589,20 @@ public class SAFA<P, S> {
 	public static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> isEquivalent(SAFA<P, S> laut,
 			SAFA<P, S> raut, BooleanAlgebra<P, S> ba, BooleanExpressionFactory<E> boolexpr, long timeout)
 					throws TimeoutException {
+		return isEquivalent(laut, raut, ba, boolexpr, new SATRelation(), timeout);
+	}
+
+	/**
+	 * Checks whether laut and raut are equivalent using bisimulation up to
+	 * congruence, computing the congruence in <code>similar</code>. Reusing
+	 * the same relation for many checks makes them cheaper.
+	 */
+	public static <P, S, E extends BooleanExpression> Pair<Boolean, List<S>> isEquivalent(SAFA<P, S> laut,
+			SAFA<P, S> raut, BooleanAlgebra<P, S> ba, BooleanExpressionFactory<E> boolexpr, SATRelation similar,
+			long timeout) throws TimeoutException {
 		Triple<SAFA<P, S>, PositiveBooleanExpression,PositiveBooleanExpression> triple = binaryOp(laut, raut, ba, BoolOp.Union);
-		return checkEquivalenceOfTwoConfigurations(triple.getLeft(), triple.getMiddle(), triple.getRight(), ba, boolexpr, timeout);
+		return checkEquivalenceOfTwoConfigurations(triple.getLeft(), triple.getMiddle(), triple.getRight(), ba, boolexpr,
+				similar, timeout);
 	}
 
 	static class RelationComparator<E extends BooleanExpression, A> implements Comparator<Pair<Pair<E, E>, List<A>>> {
@@ -558,15 +625,84 @@ public class SAFA<P, S> {
 
 	protected Collection<Integer> getPrevState(Collection<Integer> currState, S inputElement, BooleanAlgebra<P, S> ba) throws TimeoutException {
 		Collection<Integer> prevState = new HashSet<Integer>();
-		for (SAFAInputMove<P, S> t : getInputMoves()) {
-			BooleanExpression b = t.to;
-			if (b.hasModel(currState) && ba.HasModel(t.guard, inputElement))
+		for (SAFAInputMove<P, S> t : getMovesToConfiguration(currState)) {
+			if (ba.HasModel(t.guard, inputElement))
 				prevState.add(t.from);
 		}
 
 		return prevState;
 	}
 
+	// Moves of a SAFA indexed by the states their targets mention
+	private static class ReverseIndex<P, S> {
+		// all the moves, in the order of getInputMoves()
+		final List<SAFAInputMove<P, S>> moves;
+		// movesMentioning[s] are the indices of the moves whose target
+		// mentions s
+		final int[][] movesMentioning;
+		// indices of the moves whose target holds when no state is true,
+		// hence in every configuration since targets are positive
+		final BitSet constantMoves;
+
+		ReverseIndex(SAFA<P, S> aut) {
+			moves = new ArrayList<SAFAInputMove<P, S>>(aut.getInputMoves());
+			constantMoves = new BitSet(moves.size());
+
+			int[] counts = new int[aut.maxStateId + 1];
+			for (SAFAInputMove<P, S> t : moves)
+				for (Integer state : t.toStates)
+					counts[state]++;
+			movesMentioning = new int[counts.length][];
+			for (int state = 0; state < counts.length; state++)
+				movesMentioning[state] = new int[counts[state]];
+
+			for (int i = 0; i < moves.size(); i++) {
+				SAFAInputMove<P, S> t = moves.get(i);
+				if (t.to.hasModel(new BitSet()))
+					constantMoves.set(i);
+				for (Integer state : t.toStates)
+					movesMentioning[state][movesMentioning[state].length - counts[state]--] = i;
+			}
+		}
+	}
+
+	private ReverseIndex<P, S> getReverseIndex() {
+		ReverseIndex<P, S> index = reverseIndex;
+		if (index == null) {
+			index = new ReverseIndex<P, S>(this);
+			reverseIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the moves whose target is satisfied when exactly the states in
+	 * <code>configuration</code> are true, in the order of
+	 * <code>getInputMoves()</code>. Only the moves mentioning a state of the
+	 * configuration and the moves whose target holds in the empty
+	 * configuration are inspected.
+	 */
+	public List<SAFAInputMove<P, S>> getMovesToConfiguration(Collection<Integer> configuration) {
+		ReverseIndex<P, S> index = getReverseIndex();
+
+		BitSet conf = new BitSet(maxStateId + 1);
+		BitSet candidates = (BitSet) index.constantMoves.clone();
+		for (Integer state : configuration) {
+			conf.set(state);
+			if (state < index.movesMentioning.length)
+				for (int i : index.movesMentioning[state])
+					candidates.set(i);
+		}
+
+		List<SAFAInputMove<P, S>> movesTo = new ArrayList<SAFAInputMove<P, S>>();
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+			SAFAInputMove<P, S> t = index.moves.get(i);
+			if (t.to.hasModel(conf))
+				movesTo.add(t);
+		}
+		return movesTo;
+	}
+
 	/**
 	 * Checks whether laut and raut are equivalent using HopcroftKarp on the SFA
 	 * accepting the reverse language
@@ -583,7 +719,7 @@ public class SAFA<P, S> {
 	public static <P, S> boolean areReverseEquivalent(SAFA<P, S> aut1, SAFA<P, S> aut2,
 			BooleanAlgebra<P, S> ba, long timeout) throws TimeoutException {
 
-		long startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
 
 		UnionFindHopKarp<S> ds = new UnionFindHopKarp<>();
 
@@ -604,8 +740,7 @@ public class SAFA<P, S> {
 		ds.mergeSets(0, 1);
 
 		while (!toVisit.isEmpty()) {
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException("Timeout in the equivalence check");
+			deadline.check();
 
 			Pair<HashSet<Integer>, HashSet<Integer>> curr = toVisit.removeFirst();
 			HashSet<Integer> curr1 = curr.first;
@@ -616,24 +751,21 @@ public class SAFA<P, S> {
 			ArrayList<SAFAInputMove<P, S>> movesToCurr2 = new ArrayList<>();
 			ArrayList<P> predicatesToCurr2 = new ArrayList<>();
 
-			for (SAFAInputMove<P, S> t : aut1.getInputMoves())
-				if (t.to.hasModel(curr1)) {
-					movesToCurr1.add(t);
-					predicatesToCurr1.add(t.guard);
-				}
-			for (SAFAInputMove<P, S> t : aut2.getInputMoves())
-				if (t.to.hasModel(curr2)) {
-					movesToCurr2.add(t);
-					predicatesToCurr2.add(t.guard);
-				}
+			for (SAFAInputMove<P, S> t : aut1.getMovesToConfiguration(curr1)) {
+				movesToCurr1.add(t);
+				predicatesToCurr1.add(t.guard);
+			}
+			for (SAFAInputMove<P, S> t : aut2.getMovesToConfiguration(curr2)) {
+				movesToCurr2.add(t);
+				predicatesToCurr2.add(t.guard);
+			}
 
-			Collection<Pair<P, ArrayList<Integer>>> minterms1 = ba.GetMinterms(predicatesToCurr1, timeout);
-			Collection<Pair<P, ArrayList<Integer>>> minterms2 = ba.GetMinterms(predicatesToCurr2, timeout);
+			Collection<Pair<P, ArrayList<Integer>>> minterms1 = ba.GetMinterms(predicatesToCurr1, deadline.remaining());
+			Collection<Pair<P, ArrayList<Integer>>> minterms2 = ba.GetMinterms(predicatesToCurr2, deadline.remaining());
 
 			for (Pair<P, ArrayList<Integer>> minterm1 : minterms1) {
 				for (Pair<P, ArrayList<Integer>> minterm2 : minterms2) {
-					if (System.currentTimeMillis() - startTime > timeout)
-						throw new TimeoutException("Timeout in the equivalence check");
+					deadline.check();
 
 					P conj = ba.MkAnd(minterm1.first, minterm2.first);
 					if (ba.IsSatisfiable(conj)) {
@@ -711,11 +843,10 @@ public class SAFA<P, S> {
 			if (aut.initialState.hasModel(currentState))
 				finalStates.add(currentStateID);
 
-			for (SAFAInputMove<P, S> t : aut.getInputMoves())
-				if (t.to.hasModel(currentState)) {
-					movesToCurr.add(t);
-					predicatesToCurr.add(t.guard);
-				}
+			for (SAFAInputMove<P, S> t : aut.getMovesToConfiguration(currentState)) {
+				movesToCurr.add(t);
+				predicatesToCurr.add(t.guard);
+			}
 
 			Collection<Pair<P, ArrayList<Integer>>> minterms = ba.GetMinterms(predicatesToCurr);
 			for (Pair<P, ArrayList<Integer>> minterm : minterms) {
@@ -822,6 +953,7 @@ public class SAFA<P, S> {
 
 		Collection<SAFAInputMove<P, S>> transitions = new ArrayList<SAFAInputMove<P, S>>();
 
+		BooleanExpressionFactory<PositiveBooleanExpression> boolexpr = getBooleanExpressionFactory();
 		BooleanExpressionMorphism<PositiveBooleanExpression> demorganize = new BooleanExpressionMorphism<PositiveBooleanExpression>(
 				(x) -> boolexpr.MkState(x), new DeMorgan());
 		boolean addAccept = false; // do we need to create an accept state?
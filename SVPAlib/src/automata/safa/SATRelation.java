@@ -1,8 +1,10 @@
 package automata.safa;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
@@ -133,19 +135,79 @@ public class SATRelation extends SAFARelation {
 		public ISolver getSolver() {
 			return solver;
 		}
+
+		// number of literals created, activation literals included
+		private int literalCount() {
+			return (maxid - 3) / 2;
+		}
 	}
 
+	// Default bound on the number of literals and expression encodings kept
+	// across resets
+	private static final int MAX_CACHED_ENCODINGS = 1 << 16;
+
+	private final int maxCachedEncodings;
+
 	SATFactory factory;
 	BooleanExpressionMorphism<Integer> coerce;
 
+	// The pairs of the current relation are only enforced when the
+	// activation literal is true, so that reset() can retire them while
+	// keeping the encodings and the clauses learned by the solver
+	private int active;
+
+	// iff literals of the pairs known to be in the current relation
+	private final Set<Integer> members;
+
+	// statistics
+	private long queries;
+	private long cachedAnswers;
+
+	/**
+	 * A relation over the solver <code>s</code> that keeps at most
+	 * <code>maxCachedEncodings</code> literals and expression encodings
+	 * across resets
+	 */
+	public SATRelation(ISolver s, int maxCachedEncodings) {
+		this.maxCachedEncodings = maxCachedEncodings;
+		members = new HashSet<>();
+		rebuild(s);
+	}
+
 	public SATRelation(ISolver s) {
-		factory = new SATFactory(s);
-		coerce = new BooleanExpressionMorphism<>((state) -> 2 * state + 2, factory);
+		this(s, MAX_CACHED_ENCODINGS);
 	}
 
 	public SATRelation() {
 		this(SolverFactory.newDefault());
 	}
+
+	// Starts over from an empty solver
+	private void rebuild(ISolver s) {
+		factory = new SATFactory(s);
+		coerce = new BooleanExpressionMorphism<>((state) -> 2 * state + 2, factory);
+		active = factory.fresh();
+	}
+
+	/**
+	 * Empties the relation. The encodings of the expressions and the solver
+	 * state are kept, so a relation reused across equivalence checks gets
+	 * cheaper as it warms up. Once they exceed the bound given at
+	 * construction, the solver is reset and everything is dropped.
+	 */
+	public void reset() {
+		members.clear();
+		if (coerce.size() > maxCachedEncodings || factory.literalCount() > maxCachedEncodings) {
+			ISolver s = factory.getSolver();
+			s.reset();
+			rebuild(s);
+			return;
+		}
+		VecInt retire = new VecInt();
+		retire.push(-active);
+		factory.unsafeAddClause(retire);
+		active = factory.fresh();
+	}
 	
 	private int mkIff(BooleanExpression p, BooleanExpression q) throws TimeoutException {
 		int pname = coerce.apply(p);
@@ -155,19 +217,59 @@ public class SATRelation extends SAFARelation {
 	}
 	
 	public boolean isMember(BooleanExpression p, BooleanExpression q) throws TimeoutException {
+		queries++;
+		int iff = mkIff(p, q);
+		// the relation only grows until the next reset
+		if (members.contains(iff)) {
+			cachedAnswers++;
+			return true;
+		}
+
 		VecInt mem = new VecInt();
-		mem.push(-mkIff(p, q));
-		return !factory.getSolver().isSatisfiable(mem, false);
+		mem.push(active);
+		mem.push(-iff);
+		if (factory.getSolver().isSatisfiable(mem, false))
+			return false;
+		members.add(iff);
+		return true;
 	}
 	
 	public boolean add(BooleanExpression p, BooleanExpression q) throws TimeoutException {
+		int iff = mkIff(p, q);
 		VecInt pair = new VecInt();
-		pair.push(mkIff(p, q));
-		try {
-			factory.solver.addClause(pair);
-			return true;
-		} catch (ContradictionException e) {
-			return false;
-		}
+		pair.push(-active);
+		pair.push(iff);
+		factory.unsafeAddClause(pair);
+		members.add(iff);
+		// a guarded clause never contradicts the clauses already added
+		return true;
+	}
+
+	/**
+	 * @return number of membership queries
+	 */
+	public long getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return number of membership queries answered without the solver
+	 */
+	public long getCachedAnswers() {
+		return cachedAnswers;
+	}
+
+	/**
+	 * @return number of literals currently encoded in the solver
+	 */
+	public int getLiteralCount() {
+		return factory.literalCount();
+	}
+
+	/**
+	 * @return number of expressions whose encoding is currently cached
+	 */
+	public int getCachedEncodings() {
+		return coerce.size();
 	}
 }
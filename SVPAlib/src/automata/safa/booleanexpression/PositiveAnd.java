@@ -1,5 +1,6 @@
 package automata.safa.booleanexpression;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Set;
 
@@ -21,6 +22,11 @@ public class PositiveAnd extends PositiveBooleanExpression {
 		return left.hasModel(elements) && right.hasModel(elements);
 	}
 
+	@Override
+	public boolean hasModel(BitSet elements) {
+		return left.hasModel(elements) && right.hasModel(elements);
+	}
+
 	@Override
 	public Set<Integer> getStates() {
 		Set<Integer> states = left.getStates();
@@ -1,5 +1,6 @@
 package automata.safa.booleanexpression;
 
+import java.util.BitSet;
 import java.util.Collection;
 
 import automata.safa.BooleanExpression;
@@ -10,5 +11,11 @@ public abstract class PositiveBooleanExpression extends BooleanExpression {
 	@Override
 	public abstract boolean hasModel(Collection<Integer> elements);
 
+	/**
+	 * @return true iff the expression is true when exactly the states in
+	 *         <code>elements</code> are true
+	 */
+	public abstract boolean hasModel(BitSet elements);
+
 	// TODO equals clone...
 }
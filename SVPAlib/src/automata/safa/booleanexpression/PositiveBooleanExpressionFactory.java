@@ -1,18 +1,31 @@
 package automata.safa.booleanexpression;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 import automata.safa.BooleanExpressionFactory;
-import utilities.Memo;
 import utilities.Pair;
 
+/**
+ * Hash-consing factory of positive Boolean expressions. The tables are
+ * concurrent and only weakly reference the expressions, so a factory can be
+ * shared by several threads and the expressions no longer in use are reclaimed.
+ */
 public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<PositiveBooleanExpression> {
-	private Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression> mkAnd;
-	private Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression> mkOr;
-	private Memo<Integer,PositiveBooleanExpression> mkState;
+	private final LoadingCache<Pair<PositiveBooleanExpression, PositiveBooleanExpression>, PositiveBooleanExpression> mkAnd;
+	private final LoadingCache<Pair<PositiveBooleanExpression, PositiveBooleanExpression>, PositiveBooleanExpression> mkOr;
+	private final LoadingCache<Integer, PositiveBooleanExpression> mkState;
 
 	public PositiveBooleanExpressionFactory() {
-		mkAnd = new Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression>((x) -> new PositiveAnd(x.getFirst(), x.getSecond()));
-		mkOr = new Memo<Pair<PositiveBooleanExpression, PositiveBooleanExpression>,PositiveBooleanExpression>((x) -> new PositiveOr(x.getFirst(), x.getSecond()));
-		mkState = new Memo<Integer,PositiveBooleanExpression>((state) -> new PositiveId(state));
+		mkAnd = CacheBuilder.newBuilder().weakValues().build(
+				CacheLoader.from((Pair<PositiveBooleanExpression, PositiveBooleanExpression> x) -> new PositiveAnd(
+						x.getFirst(), x.getSecond())));
+		mkOr = CacheBuilder.newBuilder().weakValues().build(
+				CacheLoader.from((Pair<PositiveBooleanExpression, PositiveBooleanExpression> x) -> new PositiveOr(
+						x.getFirst(), x.getSecond())));
+		mkState = CacheBuilder.newBuilder().weakValues()
+				.build(CacheLoader.from((Integer state) -> new PositiveId(state)));
 	}
 	
 	@Override
@@ -24,7 +37,7 @@ public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<P
 		} else if (psi instanceof PositiveTrue) {
 			return phi;
 		} else {
-			return mkAnd.apply(new Pair<>(phi, psi));
+			return mkAnd.getUnchecked(new Pair<>(phi, psi));
 		}
 	}
 	
@@ -37,13 +50,13 @@ public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<P
 		} else if (psi instanceof PositiveFalse) {
 			return phi;
 		} else {
-			return mkOr.apply(new Pair<>(phi, psi));
+			return mkOr.getUnchecked(new Pair<>(phi, psi));
 		}
 	}
 
 	@Override
 	public PositiveBooleanExpression MkState(int state) {
-		return mkState.apply(state);
+		return mkState.getUnchecked(state);
 	}
 
 	@Override
@@ -55,4 +68,21 @@ public class PositiveBooleanExpressionFactory extends BooleanExpressionFactory<P
 	public PositiveBooleanExpression False() {
 		return PositiveFalse.getInstance();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return number of expressions currently in the tables (some of them
+	 *         may already be unreachable)
+	 */
+	public long size() {
+		return mkAnd.size() + mkOr.size() + mkState.size();
+	}
+
+	/**
+	 * Removes the entries of the expressions that have been reclaimed
+	 */
+	public void cleanUp() {
+		mkAnd.cleanUp();
+		mkOr.cleanUp();
+		mkState.cleanUp();
+	}
+}
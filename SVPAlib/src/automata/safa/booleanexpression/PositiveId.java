@@ -1,5 +1,6 @@
 package automata.safa.booleanexpression;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -21,6 +22,11 @@ public class PositiveId extends PositiveBooleanExpression {
 		return elements.contains(state);
 	}
 
+	@Override
+	public boolean hasModel(BitSet elements) {
+		return elements.get(state);
+	}
+
 	@Override
 	public Set<Integer> getStates() {
 		Set<Integer> states = new HashSet<>();
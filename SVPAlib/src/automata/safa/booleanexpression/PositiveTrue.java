@@ -1,5 +1,6 @@
 package automata.safa.booleanexpression;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -26,6 +27,11 @@ public class PositiveTrue extends PositiveBooleanExpression {
 		return true;
 	}
 
+	@Override
+	public boolean hasModel(BitSet elements) {
+		return true;
+	}
+
 	@Override
 	public Set<Integer> getStates() {
 		return new HashSet<>();
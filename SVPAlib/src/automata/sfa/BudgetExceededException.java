@@ -0,0 +1,69 @@
+package automata.sfa;
+
+import org.sat4j.specs.TimeoutException;
+
+import automata.sfa.DeterminizationBudget.Resource;
+
+/**
+ * Thrown when the subset construction exceeds its
+ * {@link DeterminizationBudget}. It carries the size of the partial
+ * construction, so that callers can fall back to an algorithm that does not
+ * build the whole deterministic SFA.
+ */
+public class BudgetExceededException extends TimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Resource resource;
+	private final int discoveredStates;
+	private final int exploredStates;
+	private final int transitions;
+	private final long estimatedBytes;
+
+	public BudgetExceededException(Resource resource, int discoveredStates, int exploredStates, int transitions,
+			long estimatedBytes) {
+		super(String.format("Determinization budget exceeded (%s): %d states discovered, %d explored, "
+				+ "%d transitions, ~%d bytes", resource, discoveredStates, exploredStates, transitions,
+				estimatedBytes));
+		this.resource = resource;
+		this.discoveredStates = discoveredStates;
+		this.exploredStates = exploredStates;
+		this.transitions = transitions;
+		this.estimatedBytes = estimatedBytes;
+	}
+
+	/**
+	 * @return the resource whose limit was exceeded
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * @return number of subset states discovered
+	 */
+	public int getDiscoveredStates() {
+		return discoveredStates;
+	}
+
+	/**
+	 * @return number of subset states whose moves were computed
+	 */
+	public int getExploredStates() {
+		return exploredStates;
+	}
+
+	/**
+	 * @return number of transitions created
+	 */
+	public int getTransitions() {
+		return transitions;
+	}
+
+	/**
+	 * @return estimated bytes used by the partial construction
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+}
@@ -0,0 +1,307 @@
+package automata.sfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, read-only view of an SFA. States are renamed with dense ids
+ * 0,1,...,n-1 (the initial state has id 0), moves are stored in CSR-style
+ * adjacency arrays and final states in a BitSet, so that lookups do not box
+ * or hash state ids. The view is immutable once built, epsilon closures
+ * included, and can be shared between threads.
+ *
+ * @param
+ * 			<P>
+ *            set of predicates over the domain S
+ * @param <S>
+ *            domain of the automaton alphabet
+ */
+public class CompactSFA<P, S> {
+
+	// original ids are indexed by an array only when they are non-negative
+	// and at most DENSE_FACTOR times the number of states, by a map otherwise
+	private static final int DENSE_FACTOR = 4;
+
+	// dense id to original state and back (-1 for unused original ids), one
+	// of stateToId and stateToIdMap is null
+	private final int[] idToState;
+	private final int[] stateToId;
+	private final Map<Integer, Integer> stateToIdMap;
+
+	private final BitSet finalStates;
+
+	// input moves out of state i are the ones in [outStart[i], outStart[i+1])
+	private final int[] outStart;
+	private final int[] outTo;
+	private final SFAInputMove<P, S>[] outMoves;
+
+	// input moves into state i are the ones in [inStart[i], inStart[i+1])
+	private final int[] inStart;
+	private final int[] inFrom;
+	private final SFAInputMove<P, S>[] inMoves;
+
+	// epsilon moves out of state i are the ones in [epsStart[i],
+	// epsStart[i+1])
+	private final int[] epsStart;
+	private final int[] epsTo;
+
+	// epsilon closures of every state
+	private final int[][] epsClosures;
+
+	CompactSFA(SFA<P, S> aut) {
+		Collection<Integer> states = aut.getStates();
+		int n = states.size();
+
+		int minState = aut.getInitialState();
+		int maxState = aut.getInitialState();
+		for (Integer state : states) {
+			minState = Math.min(minState, state);
+			maxState = Math.max(maxState, state);
+		}
+
+		idToState = new int[n];
+		if (minState >= 0 && maxState < (long) DENSE_FACTOR * n + 16) {
+			stateToId = new int[maxState + 1];
+			for (int i = 0; i < stateToId.length; i++)
+				stateToId[i] = -1;
+			stateToIdMap = null;
+		} else {
+			stateToId = null;
+			stateToIdMap = new HashMap<Integer, Integer>(2 * n);
+		}
+
+		int nextId = 0;
+		idToState[nextId] = aut.getInitialState();
+		setId(aut.getInitialState(), nextId++);
+		for (Integer state : states)
+			if (getId(state) < 0) {
+				idToState[nextId] = state;
+				setId(state, nextId++);
+			}
+
+		finalStates = new BitSet(n);
+		for (Integer state : aut.getFinalStates())
+			finalStates.set(getId(state));
+
+		// Moves out of every state
+		outStart = new int[n + 1];
+		epsStart = new int[n + 1];
+		List<SFAInputMove<P, S>> out = new ArrayList<SFAInputMove<P, S>>();
+		List<Integer> eps = new ArrayList<Integer>();
+		for (int id = 0; id < n; id++) {
+			outStart[id] = out.size();
+			out.addAll(aut.getInputMovesFrom(idToState[id]));
+			epsStart[id] = eps.size();
+			for (SFAEpsilon<P, S> move : aut.getEpsilonFrom(idToState[id]))
+				eps.add(getId(move.to));
+		}
+		outStart[n] = out.size();
+		epsStart[n] = eps.size();
+
+		outMoves = out.toArray(newMoveArray(out.size()));
+		outTo = new int[outMoves.length];
+		for (int i = 0; i < outMoves.length; i++)
+			outTo[i] = getId(outMoves[i].to);
+
+		epsTo = new int[eps.size()];
+		for (int i = 0; i < epsTo.length; i++)
+			epsTo[i] = eps.get(i);
+
+		// Moves into every state, obtained by counting sort on the targets
+		inStart = new int[n + 1];
+		for (int i = 0; i < outTo.length; i++)
+			inStart[outTo[i] + 1]++;
+		for (int id = 0; id < n; id++)
+			inStart[id + 1] += inStart[id];
+
+		int[] fill = new int[n];
+		inFrom = new int[outMoves.length];
+		inMoves = newMoveArray(outMoves.length);
+		for (int from = 0; from < n; from++)
+			for (int i = outStart[from]; i < outStart[from + 1]; i++) {
+				int pos = inStart[outTo[i]] + fill[outTo[i]]++;
+				inFrom[pos] = from;
+				inMoves[pos] = outMoves[i];
+			}
+
+		epsClosures = new int[n][];
+		for (int id = 0; id < n; id++)
+			epsClosures[id] = computeEpsClosure(id);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <P, S> SFAInputMove<P, S>[] newMoveArray(int length) {
+		return (SFAInputMove<P, S>[]) new SFAInputMove<?, ?>[length];
+	}
+
+	private void setId(int state, int id) {
+		if (stateToId != null)
+			stateToId[state] = id;
+		else
+			stateToIdMap.put(state, id);
+	}
+
+	// ------------------------------------------------------
+	// States
+	// ------------------------------------------------------
+
+	/**
+	 * @return number of states
+	 */
+	public int stateCount() {
+		return idToState.length;
+	}
+
+	/**
+	 * @return the dense id of the SFA state <code>state</code>, -1 if the state
+	 *         does not exist
+	 */
+	public int getId(int state) {
+		if (stateToId == null) {
+			Integer id = stateToIdMap.get(state);
+			return id == null ? -1 : id;
+		}
+		if (state < 0 || state >= stateToId.length)
+			return -1;
+		return stateToId[state];
+	}
+
+	/**
+	 * @return the SFA state with dense id <code>id</code>
+	 */
+	public int getState(int id) {
+		return idToState[id];
+	}
+
+	/**
+	 * @return true iff the state with id <code>id</code> is final
+	 */
+	public boolean isFinal(int id) {
+		return finalStates.get(id);
+	}
+
+	/**
+	 * @return true iff one of the states with ids in <code>ids</code> is final
+	 */
+	public boolean isFinalConfiguration(int[] ids) {
+		for (int id : ids)
+			if (finalStates.get(id))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return a copy of the set of ids of the final states
+	 */
+	public BitSet getFinalStates() {
+		return (BitSet) finalStates.clone();
+	}
+
+	// ------------------------------------------------------
+	// Moves
+	// ------------------------------------------------------
+
+	/**
+	 * @return number of input moves
+	 */
+	public int moveCount() {
+		return outMoves.length;
+	}
+
+	/**
+	 * @return index of the first input move out of <code>id</code>
+	 */
+	public int outBegin(int id) {
+		return outStart[id];
+	}
+
+	/**
+	 * @return index after the last input move out of <code>id</code>
+	 */
+	public int outEnd(int id) {
+		return outStart[id + 1];
+	}
+
+	/**
+	 * @return the <code>i</code>-th input move in the out order
+	 */
+	public SFAInputMove<P, S> outMove(int i) {
+		return outMoves[i];
+	}
+
+	/**
+	 * @return the guard of the <code>i</code>-th input move in the out order
+	 */
+	public P outGuard(int i) {
+		return outMoves[i].guard;
+	}
+
+	/**
+	 * @return the id of the target of the <code>i</code>-th input move in the
+	 *         out order
+	 */
+	public int outTarget(int i) {
+		return outTo[i];
+	}
+
+	/**
+	 * @return index of the first input move into <code>id</code>
+	 */
+	public int inBegin(int id) {
+		return inStart[id];
+	}
+
+	/**
+	 * @return index after the last input move into <code>id</code>
+	 */
+	public int inEnd(int id) {
+		return inStart[id + 1];
+	}
+
+	/**
+	 * @return the <code>i</code>-th input move in the in order
+	 */
+	public SFAInputMove<P, S> inMove(int i) {
+		return inMoves[i];
+	}
+
+	/**
+	 * @return the id of the source of the <code>i</code>-th input move in the
+	 *         in order
+	 */
+	public int inSource(int i) {
+		return inFrom[i];
+	}
+
+	/**
+	 * @return the ids of the states reachable from <code>id</code> using only
+	 *         epsilon moves (including <code>id</code>)
+	 */
+	public int[] getEpsClosure(int id) {
+		return epsClosures[id];
+	}
+
+	private int[] computeEpsClosure(int id) {
+		if (epsStart[id] == epsStart[id + 1])
+			return new int[] { id };
+
+		BitSet reached = new BitSet();
+		int[] toVisit = new int[stateCount()];
+		int top = 0;
+		reached.set(id);
+		toVisit[top++] = id;
+		while (top > 0) {
+			int curr = toVisit[--top];
+			for (int i = epsStart[curr]; i < epsStart[curr + 1]; i++)
+				if (!reached.get(epsTo[i])) {
+					reached.set(epsTo[i]);
+					toVisit[top++] = epsTo[i];
+				}
+		}
+		return reached.stream().toArray();
+	}
+}
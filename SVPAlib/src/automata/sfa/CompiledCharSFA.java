@@ -0,0 +1,197 @@
+package automata.sfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.sat4j.specs.TimeoutException;
+
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+
+/**
+ * A deterministic SFA over characters lowered to a flat transition table.
+ *
+ * The alphabet is split into character classes using the interval boundaries
+ * of all the guards, so that every guard is a union of classes. The table is
+ * indexed by <code>state * classCount + class</code> and contains the target
+ * state or <code>-1</code> when the automaton gets stuck. Matching does not
+ * allocate and does not box characters.
+ */
+public class CompiledCharSFA {
+
+	// Size of the direct lookup table used for ASCII characters
+	private static final int ASCII_SIZE = 128;
+
+	private final int initialState;
+	private final int stateCount;
+	private final int classCount;
+
+	// classStarts[i] is the smallest character of class i
+	private final char[] classStarts;
+	// class of every ASCII character
+	private final int[] asciiClass;
+	// transition table, -1 when there is no move
+	private final int[] delta;
+	private final boolean[] accepting;
+
+	private CompiledCharSFA(int initialState, int stateCount, char[] classStarts, int[] delta, boolean[] accepting) {
+		this.initialState = initialState;
+		this.stateCount = stateCount;
+		this.classStarts = classStarts;
+		this.classCount = classStarts.length;
+		this.delta = delta;
+		this.accepting = accepting;
+
+		asciiClass = new int[ASCII_SIZE];
+		for (int c = 0; c < ASCII_SIZE; c++)
+			asciiClass[c] = searchClass((char) c);
+	}
+
+	/**
+	 * Compiles <code>aut</code> to a transition table. The automaton is
+	 * determinized first if needed; it should be minimized by the caller to
+	 * obtain the smallest table.
+	 *
+	 * @throws TimeoutException
+	 */
+	public static CompiledCharSFA compile(SFA<CharPred, Character> aut, UnaryCharIntervalSolver ba)
+			throws TimeoutException {
+
+		SFA<CharPred, Character> dfa = aut;
+		if (!dfa.isEpsilonFree())
+			dfa = dfa.removeEpsilonMoves(ba);
+		if (!dfa.isDeterministic(ba))
+			dfa = dfa.determinize(ba);
+
+		// Every lower bound and every successor of an upper bound starts a new
+		// character class
+		TreeSet<Character> bounds = new TreeSet<Character>();
+		bounds.add(CharPred.MIN_CHAR);
+		for (SFAInputMove<CharPred, Character> move : dfa.getInputMovesFrom(dfa.getStates()))
+			for (ImmutablePair<Character, Character> interval : move.guard.intervals) {
+				bounds.add(interval.left);
+				if (interval.right < CharPred.MAX_CHAR)
+					bounds.add((char) (interval.right + 1));
+			}
+
+		char[] classStarts = new char[bounds.size()];
+		int i = 0;
+		for (Character c : bounds)
+			classStarts[i++] = c;
+		int classCount = classStarts.length;
+
+		// Rename the states with 0,1,... starting from the initial state
+		Map<Integer, Integer> stateToId = new HashMap<Integer, Integer>();
+		stateToId.put(dfa.getInitialState(), 0);
+		for (Integer state : dfa.getStates())
+			if (!stateToId.containsKey(state))
+				stateToId.put(state, stateToId.size());
+
+		int stateCount = stateToId.size();
+		int[] delta = new int[stateCount * classCount];
+		Arrays.fill(delta, -1);
+		boolean[] accepting = new boolean[stateCount];
+
+		for (Integer state : dfa.getStates()) {
+			int from = stateToId.get(state);
+			accepting[from] = dfa.isFinalState(state);
+			for (SFAInputMove<CharPred, Character> move : dfa.getInputMovesFrom(state)) {
+				int to = stateToId.get(move.to);
+				for (ImmutablePair<Character, Character> interval : move.guard.intervals) {
+					int lo = Arrays.binarySearch(classStarts, interval.left);
+					int hi = searchClass(classStarts, interval.right);
+					for (int cls = lo; cls <= hi; cls++)
+						delta[from * classCount + cls] = to;
+				}
+			}
+		}
+
+		return new CompiledCharSFA(0, stateCount, classStarts, delta, accepting);
+	}
+
+	/**
+	 * @return true iff the automaton accepts <code>input</code>
+	 */
+	public boolean matches(CharSequence input) {
+		int state = initialState;
+		for (int i = 0; i < input.length(); i++) {
+			state = delta[state * classCount + classOf(input.charAt(i))];
+			if (state < 0)
+				return false;
+		}
+		return accepting[state];
+	}
+
+	/**
+	 * @return true iff the automaton accepts the characters of
+	 *         <code>input</code> between <code>from</code> (included) and
+	 *         <code>to</code> (excluded)
+	 */
+	public boolean matches(char[] input, int from, int to) {
+		int state = initialState;
+		for (int i = from; i < to; i++) {
+			state = delta[state * classCount + classOf(input[i])];
+			if (state < 0)
+				return false;
+		}
+		return accepting[state];
+	}
+
+	/**
+	 * @return the id of the character class containing <code>c</code>
+	 */
+	public int classOf(char c) {
+		if (c < ASCII_SIZE)
+			return asciiClass[c];
+		return searchClass(c);
+	}
+
+	private int searchClass(char c) {
+		return searchClass(classStarts, c);
+	}
+
+	// index of the last class starting at or before c
+	private static int searchClass(char[] classStarts, char c) {
+		int pos = Arrays.binarySearch(classStarts, c);
+		return pos >= 0 ? pos : -pos - 2;
+	}
+
+	/**
+	 * @return the state reached from <code>state</code> reading a character of
+	 *         class <code>cls</code>, -1 if there is no such state
+	 */
+	public int step(int state, int cls) {
+		return delta[state * classCount + cls];
+	}
+
+	/**
+	 * @return the initial state
+	 */
+	public int getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * @return true iff <code>state</code> is final
+	 */
+	public boolean isFinalState(int state) {
+		return accepting[state];
+	}
+
+	/**
+	 * @return number of states in the table
+	 */
+	public int stateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * @return number of character classes
+	 */
+	public int classCount() {
+		return classCount;
+	}
+}
@@ -0,0 +1,71 @@
+package automata.sfa;
+
+/**
+ * Limits on the resources used by the subset construction. A budget bounds
+ * the number of states and transitions of the deterministic SFA and an
+ * estimate of the bytes used by the subset states and the transitions (the
+ * guards are not counted, as their size depends on the Boolean algebra).
+ */
+public class DeterminizationBudget {
+
+	public enum Resource {
+		STATES, TRANSITIONS, BYTES
+	}
+
+	// estimated bytes of a subset state: ImmutableBitSet, its array header,
+	// the hash map entry, the boxed id and the list slot
+	static final long BYTES_PER_STATE = 88;
+	static final long BYTES_PER_WORD = 8;
+	// estimated bytes of an SFAInputMove and its list slot
+	static final long BYTES_PER_TRANSITION = 40;
+
+	/**
+	 * The budget without limits
+	 */
+	public static final DeterminizationBudget UNLIMITED = new DeterminizationBudget(Integer.MAX_VALUE,
+			Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	/**
+	 * The budget used when none is given: half of the maximum heap
+	 */
+	public static final DeterminizationBudget DEFAULT = new DeterminizationBudget(Integer.MAX_VALUE,
+			Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 2);
+
+	public final int maxStates;
+	public final int maxTransitions;
+	public final long maxBytes;
+
+	public DeterminizationBudget(int maxStates, int maxTransitions, long maxBytes) {
+		this.maxStates = maxStates;
+		this.maxTransitions = maxTransitions;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return a budget only limiting the number of states to
+	 *         <code>maxStates</code>
+	 */
+	public static DeterminizationBudget ofStates(int maxStates) {
+		return new DeterminizationBudget(maxStates, Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the first resource among states, transitions and bytes whose
+	 *         usage exceeds the budget, null if there is none
+	 */
+	Resource exceeded(int states, int transitions, long bytes) {
+		if (states > maxStates)
+			return Resource.STATES;
+		if (transitions > maxTransitions)
+			return Resource.TRANSITIONS;
+		if (bytes > maxBytes)
+			return Resource.BYTES;
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DeterminizationBudget: %d states, %d transitions, %d bytes", maxStates, maxTransitions,
+				maxBytes);
+	}
+}
@@ -0,0 +1,363 @@
+package automata.sfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import utilities.Deadline;
+import utilities.ImmutableBitSet;
+import utilities.Pair;
+
+/**
+ * Deterministic view of an SFA whose subset states and minterm transitions are
+ * computed on demand. A subset state is the set of the dense ids (see
+ * {@link CompactSFA}) of the states it contains, closed under epsilon moves.
+ * The moves of the most recently expanded states are kept in an LRU cache, so
+ * the memory used for transitions is bounded even when the deterministic SFA
+ * is too large to be built. Searches still remember the subset states they
+ * visited. Instances are not thread-safe.
+ *
+ * @param
+ * 			<P>
+ *            set of predicates over the domain S
+ * @param <S>
+ *            domain of the automaton alphabet
+ */
+public class LazyDeterministicSFA<P, S> {
+
+	// Default bound on the number of expanded states kept in the cache
+	public static final int DEFAULT_MAX_CACHED_STATES = 10000;
+
+	private final CompactSFA<P, S> compact;
+	private final BooleanAlgebra<P, S> ba;
+	private final ImmutableBitSet initialState;
+	private final BitSet finalIds;
+	private final LinkedHashMap<ImmutableBitSet, List<Pair<P, ImmutableBitSet>>> expanded;
+
+	// statistics
+	private long hits;
+	private long misses;
+
+	public LazyDeterministicSFA(SFA<P, S> aut, BooleanAlgebra<P, S> ba) {
+		this(aut, ba, DEFAULT_MAX_CACHED_STATES);
+	}
+
+	/**
+	 * A view of <code>aut</code> caching the moves of at most
+	 * <code>maxCachedStates</code> subset states
+	 */
+	public LazyDeterministicSFA(SFA<P, S> aut, BooleanAlgebra<P, S> ba, final int maxCachedStates) {
+		this.compact = aut.getCompactRepresentation();
+		this.ba = ba;
+		this.finalIds = compact.getFinalStates();
+		this.initialState = closure(new int[] { 0 });
+		this.expanded = new LinkedHashMap<ImmutableBitSet, List<Pair<P, ImmutableBitSet>>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ImmutableBitSet, List<Pair<P, ImmutableBitSet>>> eldest) {
+				return size() > maxCachedStates;
+			}
+		};
+	}
+
+	/**
+	 * @return the initial subset state
+	 */
+	public ImmutableBitSet getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * @return true iff <code>state</code> contains a final state
+	 */
+	public boolean isFinal(ImmutableBitSet state) {
+		return state.intersects(finalIds);
+	}
+
+	/**
+	 * @return the moves out of <code>state</code> as pairs (guard, target).
+	 *         Guards are pairwise disjoint and moves to the empty subset are
+	 *         omitted.
+	 * @throws TimeoutException
+	 */
+	public List<Pair<P, ImmutableBitSet>> getMovesFrom(ImmutableBitSet state, long timeout)
+			throws TimeoutException {
+		List<Pair<P, ImmutableBitSet>> moves = expanded.get(state);
+		if (moves != null) {
+			hits++;
+			return moves;
+		}
+		misses++;
+
+		ArrayList<P> predicates = new ArrayList<P>();
+		List<Integer> targets = new ArrayList<Integer>();
+		for (int st = state.nextSetBit(0); st >= 0; st = state.nextSetBit(st + 1))
+			for (int i = compact.outBegin(st); i < compact.outEnd(st); i++) {
+				predicates.add(compact.outGuard(i));
+				targets.add(compact.outTarget(i));
+			}
+
+		moves = new ArrayList<Pair<P, ImmutableBitSet>>();
+		for (Pair<P, ArrayList<Integer>> minterm : ba.GetMinterms(predicates, timeout)) {
+			BitSet to = new BitSet(compact.stateCount());
+			for (int i = 0; i < minterm.second.size(); i++)
+				if (minterm.second.get(i) == 1)
+					for (int id : compact.getEpsClosure(targets.get(i)))
+						to.set(id);
+			if (!to.isEmpty())
+				moves.add(new Pair<P, ImmutableBitSet>(minterm.first, ImmutableBitSet.of(to)));
+		}
+		moves = Collections.unmodifiableList(moves);
+		expanded.put(state, moves);
+		return moves;
+	}
+
+	/**
+	 * @return the subset state reached from <code>state</code> reading
+	 *         <code>symbol</code>, it is empty if the symbol is rejected
+	 * @throws TimeoutException
+	 */
+	public ImmutableBitSet step(ImmutableBitSet state, S symbol) throws TimeoutException {
+		// use the minterms if they are known, they avoid unions of closures
+		List<Pair<P, ImmutableBitSet>> moves = expanded.get(state);
+		if (moves != null) {
+			hits++;
+			for (Pair<P, ImmutableBitSet> move : moves)
+				if (ba.HasModel(move.first, symbol))
+					return move.second;
+			return ImmutableBitSet.of(new BitSet());
+		}
+
+		BitSet to = new BitSet(compact.stateCount());
+		for (int st = state.nextSetBit(0); st >= 0; st = state.nextSetBit(st + 1))
+			for (int i = compact.outBegin(st); i < compact.outEnd(st); i++)
+				if (ba.HasModel(compact.outGuard(i), symbol))
+					for (int id : compact.getEpsClosure(compact.outTarget(i)))
+						to.set(id);
+		return ImmutableBitSet.of(to);
+	}
+
+	/**
+	 * @return true iff <code>input</code> is accepted
+	 * @throws TimeoutException
+	 */
+	public boolean accepts(List<S> input) throws TimeoutException {
+		ImmutableBitSet state = initialState;
+		for (S symbol : input) {
+			state = step(state, symbol);
+			if (state.isEmpty())
+				return false;
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * @return true iff the language is empty
+	 * @throws TimeoutException
+	 */
+	public boolean isEmpty(long timeout) throws TimeoutException {
+		return getWitness(timeout) == null;
+	}
+
+	/**
+	 * @return a shortest accepted word, null if the language is empty
+	 * @throws TimeoutException
+	 */
+	public List<S> getWitness(long timeout) throws TimeoutException {
+		return getProductWitness(this, null, timeout);
+	}
+
+	/**
+	 * @return a shortest word accepted by both <code>aut1</code> and
+	 *         <code>aut2</code>, null if there is none
+	 * @throws TimeoutException
+	 */
+	public static <P, S> List<S> getIntersectionWitness(LazyDeterministicSFA<P, S> aut1,
+			LazyDeterministicSFA<P, S> aut2, long timeout) throws TimeoutException {
+		return getProductWitness(aut1, aut2, timeout);
+	}
+
+	/**
+	 * @return a shortest word accepted by exactly one of <code>aut1</code>
+	 *         and <code>aut2</code>, null if they are equivalent
+	 * @throws TimeoutException
+	 */
+	public static <P, S> List<S> getDistinguishingWitness(LazyDeterministicSFA<P, S> aut1,
+			LazyDeterministicSFA<P, S> aut2, long timeout) throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
+		BooleanAlgebra<P, S> ba = aut1.ba;
+
+		// explore the pairs of subset states, the empty subset stands for the
+		// sink state of a deterministic SFA that rejects
+		ImmutableBitSet sink = ImmutableBitSet.of(new BitSet());
+		Pair<ImmutableBitSet, ImmutableBitSet> init = new Pair<ImmutableBitSet, ImmutableBitSet>(aut1.initialState,
+				aut2.initialState);
+		Map<Pair<ImmutableBitSet, ImmutableBitSet>, Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>> parent = new HashMap<>();
+		parent.put(init, null);
+		LinkedList<Pair<ImmutableBitSet, ImmutableBitSet>> toVisit = new LinkedList<>();
+		toVisit.add(init);
+
+		while (!toVisit.isEmpty()) {
+			deadline.check();
+
+			Pair<ImmutableBitSet, ImmutableBitSet> curr = toVisit.removeFirst();
+			if (aut1.isFinal(curr.first) != aut2.isFinal(curr.second))
+				return getPath(parent, curr);
+
+			List<Pair<P, ImmutableBitSet>> moves1 = curr.first.isEmpty() ? sinkMoves(ba, sink)
+					: aut1.getMovesFrom(curr.first, deadline.remaining());
+			List<Pair<P, ImmutableBitSet>> moves2 = curr.second.isEmpty() ? sinkMoves(ba, sink)
+					: aut2.getMovesFrom(curr.second, deadline.remaining());
+			// the moves omit the sink, add the missing part of the alphabet
+			moves1 = completeMoves(moves1, ba, sink);
+			moves2 = completeMoves(moves2, ba, sink);
+
+			for (Pair<P, ImmutableBitSet> move1 : moves1)
+				for (Pair<P, ImmutableBitSet> move2 : moves2) {
+					if (move1.second.isEmpty() && move2.second.isEmpty())
+						continue;
+					P conj = ba.MkAnd(move1.first, move2.first);
+					if (!ba.IsSatisfiable(conj))
+						continue;
+					Pair<ImmutableBitSet, ImmutableBitSet> next = new Pair<ImmutableBitSet, ImmutableBitSet>(
+							move1.second, move2.second);
+					if (!parent.containsKey(next)) {
+						parent.put(next, new Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>(curr,
+								ba.generateWitness(conj)));
+						toVisit.add(next);
+					}
+				}
+		}
+		return null;
+	}
+
+	// Breadth first search of a final state of aut1 (if aut2 is null) or of
+	// the product of aut1 and aut2
+	private static <P, S> List<S> getProductWitness(LazyDeterministicSFA<P, S> aut1, LazyDeterministicSFA<P, S> aut2,
+			long timeout) throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
+		BooleanAlgebra<P, S> ba = aut1.ba;
+
+		// when aut2 is null the second component is always its initial state
+		ImmutableBitSet init2 = aut2 == null ? aut1.initialState : aut2.initialState;
+		Pair<ImmutableBitSet, ImmutableBitSet> init = new Pair<ImmutableBitSet, ImmutableBitSet>(aut1.initialState,
+				init2);
+		Map<Pair<ImmutableBitSet, ImmutableBitSet>, Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>> parent = new HashMap<>();
+		parent.put(init, null);
+		LinkedList<Pair<ImmutableBitSet, ImmutableBitSet>> toVisit = new LinkedList<>();
+		toVisit.add(init);
+
+		while (!toVisit.isEmpty()) {
+			deadline.check();
+
+			Pair<ImmutableBitSet, ImmutableBitSet> curr = toVisit.removeFirst();
+			if (aut1.isFinal(curr.first) && (aut2 == null || aut2.isFinal(curr.second)))
+				return getPath(parent, curr);
+
+			for (Pair<P, ImmutableBitSet> move1 : aut1.getMovesFrom(curr.first, deadline.remaining())) {
+				if (aut2 == null) {
+					Pair<ImmutableBitSet, ImmutableBitSet> next = new Pair<ImmutableBitSet, ImmutableBitSet>(
+							move1.second, init2);
+					if (!parent.containsKey(next)) {
+						parent.put(next, new Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>(curr,
+								ba.generateWitness(move1.first)));
+						toVisit.add(next);
+					}
+					continue;
+				}
+				for (Pair<P, ImmutableBitSet> move2 : aut2.getMovesFrom(curr.second, deadline.remaining())) {
+					P conj = ba.MkAnd(move1.first, move2.first);
+					if (!ba.IsSatisfiable(conj))
+						continue;
+					Pair<ImmutableBitSet, ImmutableBitSet> next = new Pair<ImmutableBitSet, ImmutableBitSet>(
+							move1.second, move2.second);
+					if (!parent.containsKey(next)) {
+						parent.put(next, new Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>(curr,
+								ba.generateWitness(conj)));
+						toVisit.add(next);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	// Rebuilds the word leading to state from the parent pointers
+	private static <S> List<S> getPath(
+			Map<Pair<ImmutableBitSet, ImmutableBitSet>, Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S>> parent,
+			Pair<ImmutableBitSet, ImmutableBitSet> state) {
+		LinkedList<S> word = new LinkedList<S>();
+		for (Pair<Pair<ImmutableBitSet, ImmutableBitSet>, S> p = parent.get(state); p != null; p = parent
+				.get(p.first))
+			word.addFirst(p.second);
+		return word;
+	}
+
+	private static <P, S> List<Pair<P, ImmutableBitSet>> sinkMoves(BooleanAlgebra<P, S> ba, ImmutableBitSet sink) {
+		return Collections.singletonList(new Pair<P, ImmutableBitSet>(ba.True(), sink));
+	}
+
+	// Adds a move to the sink for the symbols without a move
+	private static <P, S> List<Pair<P, ImmutableBitSet>> completeMoves(List<Pair<P, ImmutableBitSet>> moves,
+			BooleanAlgebra<P, S> ba, ImmutableBitSet sink) throws TimeoutException {
+		P rest = ba.True();
+		for (Pair<P, ImmutableBitSet> move : moves)
+			rest = ba.MkAnd(rest, ba.MkNot(move.first));
+		if (!ba.IsSatisfiable(rest))
+			return moves;
+		List<Pair<P, ImmutableBitSet>> complete = new ArrayList<Pair<P, ImmutableBitSet>>(moves);
+		complete.add(new Pair<P, ImmutableBitSet>(rest, sink));
+		return complete;
+	}
+
+	// Epsilon closure of a set of dense ids
+	private ImmutableBitSet closure(int[] ids) {
+		BitSet set = new BitSet(compact.stateCount());
+		for (int id : ids)
+			for (int c : compact.getEpsClosure(id))
+				set.set(c);
+		return ImmutableBitSet.of(set);
+	}
+
+	// ------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------
+
+	/**
+	 * @return number of expanded states currently cached
+	 */
+	public int getCachedStates() {
+		return expanded.size();
+	}
+
+	/**
+	 * @return number of lookups of expanded states answered by the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of states that were expanded
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LazyDeterministicSFA: %d cached states, %d hits, %d misses", expanded.size(), hits,
+				misses);
+	}
+}
@@ -7,7 +7,10 @@
 package automata.sfa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -15,6 +18,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.sat4j.specs.TimeoutException;
 
@@ -24,10 +30,18 @@ import automata.safa.BooleanExpressionFactory;
 import automata.safa.SAFA;
 import automata.safa.SAFAInputMove;
 import automata.safa.booleanexpression.PositiveBooleanExpression;
+import automata.sfa.DeterminizationBudget.Resource;
 import theory.BooleanAlgebra;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
 import utilities.Block;
+import utilities.Deadline;
+import utilities.ImmutableBitSet;
+import utilities.LongIntMap;
 import utilities.Pair;
-import utilities.Timers;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
+import utilities.Metrics.Timer;
 import utilities.UnionFindHopKarp;
 
 /**
@@ -101,6 +115,9 @@ public class SFA<P, S> extends Automaton<P, S> {
 	private Integer maxStateId;
 	private Integer transitionCount;
 
+	// built on demand by getCompactRepresentation
+	private CompactSFA<P, S> compact;
+
 	/**
 	 * @return the maximum state id
 	 */
@@ -122,6 +139,16 @@ public class SFA<P, S> extends Automaton<P, S> {
 		return transitionCount;
 	}
 
+	/**
+	 * @return a compact view of the automaton with dense state ids and
+	 *         adjacency arrays, computed once and shared by later calls
+	 */
+	public CompactSFA<P, S> getCompactRepresentation() {
+		if (compact == null)
+			compact = new CompactSFA<P, S>(this);
+		return compact;
+	}
+
 	// ------------------------------------------------------
 	// Constructors
 	// ------------------------------------------------------
@@ -294,74 +321,358 @@ public class SFA<P, S> extends Automaton<P, S> {
 	public static <A, B> SFA<A, B> intersection(SFA<A, B> aut1, SFA<A, B> aut2, BooleanAlgebra<A, B> ba, long timeout)
 			throws TimeoutException {
 
-		long startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
 
 		// if one of the automata is empty return the empty SFA
 		if (aut1.isEmpty || aut2.isEmpty)
 			return getEmptySFA(ba);
 
+		CompactSFA<A, B> c1 = aut1.getCompactRepresentation();
+		CompactSFA<A, B> c2 = aut2.getCompactRepresentation();
+
 		// components of new SFA
 		Collection<SFAMove<A, B>> transitions = new ArrayList<SFAMove<A, B>>();
 		Integer initialState = 0;
 		Collection<Integer> finalStates = new ArrayList<Integer>();
 
-		// reached contains the product states (p1,p2) we discovered and maps
-		// them to a stateId
-		HashMap<Pair<Integer, Integer>, Integer> reached = new HashMap<Pair<Integer, Integer>, Integer>();
-		// toVisit contains the product states we still have not explored
-		LinkedList<Pair<Integer, Integer>> toVisit = new LinkedList<Pair<Integer, Integer>>();
+		// reached maps the product states (p1,p2) we discovered, encoded as
+		// longs of dense ids, to a stateId. Ids are assigned in visiting order,
+		// so the product state with id i is stored in position i of pairs
+		LongIntMap reached = new LongIntMap();
+		long[] pairs = new long[16];
+		int reachedCount = 0;
 
 		// The initial state is the pair consisting of the initial
-		// states of aut1 and aut2
-		Pair<Integer, Integer> initPair = new Pair<Integer, Integer>(aut1.initialState, aut2.initialState);
-		reached.put(initPair, 0);
-		toVisit.add(initPair);
+		// states of aut1 and aut2 (both have dense id 0)
+		reached.put(LongIntMap.pairKey(0, 0), reachedCount);
+		pairs[reachedCount++] = LongIntMap.pairKey(0, 0);
 
 		// Explore the product automaton until no new states can be reached
-		while (!toVisit.isEmpty()) {
+		for (int currentStateID = 0; currentStateID < reachedCount; currentStateID++) {
 
-			Pair<Integer, Integer> currentState = toVisit.removeFirst();
-			int currentStateID = reached.get(currentState);
+			long currentState = pairs[currentStateID];
 
 			// get the set of states reachable from currentState via epsilon
 			// moves
-			Collection<Integer> epsilonClosure1 = aut1.getEpsClosure(currentState.first, ba);
-			Collection<Integer> epsilonClosure2 = aut2.getEpsClosure(currentState.second, ba);
+			int[] epsilonClosure1 = c1.getEpsClosure((int) (currentState >>> 32));
+			int[] epsilonClosure2 = c2.getEpsClosure((int) currentState);
 
 			// if both the epsilon closures contain a final state currentStateID
 			// is final
-			if (aut1.isFinalConfiguration(epsilonClosure1) && aut2.isFinalConfiguration(epsilonClosure2))
+			if (c1.isFinalConfiguration(epsilonClosure1) && c2.isFinalConfiguration(epsilonClosure2))
 				finalStates.add(currentStateID);
 
 			// Try to pair transitions out of both automata
-			for (SFAInputMove<A, B> ct1 : aut1.getInputMovesFrom(epsilonClosure1))
-				for (SFAInputMove<A, B> ct2 : aut2.getInputMovesFrom(epsilonClosure2)) {
+			for (int st1 : epsilonClosure1)
+				for (int i1 = c1.outBegin(st1); i1 < c1.outEnd(st1); i1++)
+					for (int st2 : epsilonClosure2)
+						for (int i2 = c2.outBegin(st2); i2 < c2.outEnd(st2); i2++) {
+
+							deadline.check();
+
+							// create conjunction of the two guards and create
+							// transition only if the conjunction is satisfiable
+							A intersGuard = ba.MkAnd(c1.outGuard(i1), c2.outGuard(i2));
+							if (ba.IsSatisfiable(intersGuard)) {
+
+								// Create new product transition and add it to
+								// transitions
+								long nextState = LongIntMap.pairKey(c1.outTarget(i1), c2.outTarget(i2));
+
+								int nextStateId = reached.get(nextState);
+								if (nextStateId < 0) {
+									nextStateId = reachedCount;
+									reached.put(nextState, nextStateId);
+									if (reachedCount == pairs.length)
+										pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+									pairs[reachedCount++] = nextState;
+								}
 
-					if (System.currentTimeMillis() - startTime > timeout)
-						throw new TimeoutException();
+								transitions.add(new SFAInputMove<A, B>(currentStateID, nextStateId, intersGuard));
+							}
+						}
+		}
 
-					// create conjunction of the two guards and create
-					// transition only if the conjunction is satisfiable
-					A intersGuard = ba.MkAnd(ct1.guard, ct2.guard);
-					if (ba.IsSatisfiable(intersGuard)) {
+		return MkSFA(transitions, initialState, finalStates, ba);
+	}
 
-						// Create new product transition and add it to
-						// transitions
-						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(ct1.to, ct2.to);
+	/**
+	 * Computes the intersection with <code>aut</code> as a new SFA, checking
+	 * the guards of the product moves in parallel on the common ForkJoin pool
+	 *
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> parallelIntersectionWith(SFA<P, S> aut, BooleanAlgebra<P, S> ba, long timeout)
+			throws TimeoutException {
+		return parallelIntersection(this, aut, ba, ForkJoinPool.commonPool(), timeout);
+	}
 
-						int nextStateId = getStateId(nextState, reached, toVisit);
+	/**
+	 * Computes the intersection with <code>aut1</code> and <code>aut2</code> as
+	 * a new SFA. The product is explored level by level: the product moves out
+	 * of the states of a level are computed in parallel on <code>pool</code>,
+	 * then the new states are numbered sequentially, so the result is the same
+	 * SFA (state ids included) computed by <code>intersection</code>.
+	 * <code>ba</code> must support concurrent calls to MkAnd and IsSatisfiable.
+	 *
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> parallelIntersection(SFA<A, B> aut1, SFA<A, B> aut2, final BooleanAlgebra<A, B> ba,
+			ForkJoinPool pool, long timeout) throws TimeoutException {
 
-						SFAInputMove<A, B> newTrans = new SFAInputMove<A, B>(currentStateID, nextStateId, intersGuard);
+		final Deadline deadline = Deadline.after(timeout);
 
-						transitions.add(newTrans);
+		// if one of the automata is empty return the empty SFA
+		if (aut1.isEmpty || aut2.isEmpty)
+			return getEmptySFA(ba);
+
+		final CompactSFA<A, B> c1 = aut1.getCompactRepresentation();
+		final CompactSFA<A, B> c2 = aut2.getCompactRepresentation();
+
+		// components of new SFA
+		Collection<SFAMove<A, B>> transitions = new ArrayList<SFAMove<A, B>>();
+		Integer initialState = 0;
+		Collection<Integer> finalStates = new ArrayList<Integer>();
+
+		// same numbering as in intersection, only written between levels
+		LongIntMap reached = new LongIntMap();
+		long[] pairs = new long[16];
+		int reachedCount = 0;
+
+		reached.put(LongIntMap.pairKey(0, 0), reachedCount);
+		pairs[reachedCount++] = LongIntMap.pairKey(0, 0);
+
+		int levelStart = 0;
+		while (levelStart < reachedCount) {
+			final int levelEnd = reachedCount;
+			final int[][] closures1 = new int[levelEnd - levelStart][];
+			final int[][] closures2 = new int[levelEnd - levelStart][];
+
+			// closures and final states of the level, before forking
+			for (int id = levelStart; id < levelEnd; id++) {
+				closures1[id - levelStart] = c1.getEpsClosure((int) (pairs[id] >>> 32));
+				closures2[id - levelStart] = c2.getEpsClosure((int) pairs[id]);
+				if (c1.isFinalConfiguration(closures1[id - levelStart])
+						&& c2.isFinalConfiguration(closures2[id - levelStart]))
+					finalStates.add(id);
+			}
+
+			// successors.get(i) holds the satisfiable product moves out of the
+			// i-th state of the level, in the order used by intersection
+			final List<List<Pair<A, Long>>> successors = new ArrayList<List<Pair<A, Long>>>(
+					Collections.<List<Pair<A, Long>>> nCopies(levelEnd - levelStart, null));
+			final AtomicBoolean timedOut = new AtomicBoolean(false);
+
+			class LevelTask extends RecursiveAction {
+				private static final long serialVersionUID = 1L;
+				private final int from;
+				private final int to;
+
+				LevelTask(int from, int to) {
+					this.from = from;
+					this.to = to;
+				}
+
+				@Override
+				protected void compute() {
+					if (to - from > 1) {
+						int mid = (from + to) >>> 1;
+						invokeAll(new LevelTask(from, mid), new LevelTask(mid, to));
+						return;
 					}
+					List<Pair<A, Long>> moves = new ArrayList<Pair<A, Long>>();
+					for (int st1 : closures1[from])
+						for (int i1 = c1.outBegin(st1); i1 < c1.outEnd(st1); i1++)
+							for (int st2 : closures2[from])
+								for (int i2 = c2.outBegin(st2); i2 < c2.outEnd(st2); i2++) {
+									if (timedOut.get())
+										return;
+									if (deadline.isExpired()) {
+										timedOut.set(true);
+										return;
+									}
+									try {
+										A intersGuard = ba.MkAnd(c1.outGuard(i1), c2.outGuard(i2));
+										if (ba.IsSatisfiable(intersGuard))
+											moves.add(new Pair<A, Long>(intersGuard,
+													LongIntMap.pairKey(c1.outTarget(i1), c2.outTarget(i2))));
+									} catch (TimeoutException e) {
+										timedOut.set(true);
+										return;
+									}
+								}
+					successors.set(from, moves);
+				}
+			}
+
+			pool.invoke(new LevelTask(0, levelEnd - levelStart));
+			if (timedOut.get())
+				throw new TimeoutException();
 
+			// Number the new states in the order the sequential version
+			// discovers them
+			for (int id = levelStart; id < levelEnd; id++)
+				for (Pair<A, Long> move : successors.get(id - levelStart)) {
+					long nextState = move.second;
+					int nextStateId = reached.get(nextState);
+					if (nextStateId < 0) {
+						nextStateId = reachedCount;
+						reached.put(nextState, nextStateId);
+						if (reachedCount == pairs.length)
+							pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+						pairs[reachedCount++] = nextState;
+					}
+					transitions.add(new SFAInputMove<A, B>(id, nextStateId, move.first));
 				}
+
+			levelStart = levelEnd;
 		}
 
 		return MkSFA(transitions, initialState, finalStates, ba);
 	}
 
+	// A tuple of dense state ids, one per automaton in an n-ary product
+	private static final class StateTuple {
+		final int[] ids;
+		final int hash;
+
+		StateTuple(int[] ids) {
+			this.ids = ids;
+			this.hash = Arrays.hashCode(ids);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StateTuple && hash == ((StateTuple) other).hash
+					&& Arrays.equals(ids, ((StateTuple) other).ids);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Checks whether the intersection of the automata in <code>auts</code> is
+	 * empty without building any product SFA. The n-ary product is explored
+	 * breadth first and the search stops at the first tuple of final states.
+	 *
+	 * @return a pair (true, null) if the intersection is empty, (false, w)
+	 *         otherwise, where w is a shortest word accepted by all the
+	 *         automata
+	 * @throws TimeoutException
+	 */
+	public static <A, B> Pair<Boolean, List<B>> intersectionIsEmpty(List<SFA<A, B>> auts, BooleanAlgebra<A, B> ba,
+			long timeout) throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
+
+		int n = auts.size();
+		List<CompactSFA<A, B>> compacts = new ArrayList<CompactSFA<A, B>>(n);
+		for (SFA<A, B> aut : auts) {
+			if (aut.isEmpty)
+				return new Pair<Boolean, List<B>>(true, null);
+			compacts.add(aut.getCompactRepresentation());
+		}
+
+		// reached maps the discovered tuples to their index in the visit
+		// order, for every tuple we keep the move used to discover it
+		Map<StateTuple, Integer> reached = new HashMap<StateTuple, Integer>();
+		List<StateTuple> tuples = new ArrayList<StateTuple>();
+		List<Integer> parents = new ArrayList<Integer>();
+		List<A> guards = new ArrayList<A>();
+
+		// The initial tuple consists of the initial states (dense id 0)
+		StateTuple initial = new StateTuple(new int[n]);
+		reached.put(initial, 0);
+		tuples.add(initial);
+		parents.add(-1);
+		guards.add(null);
+
+		int[][] closures = new int[n][];
+		int[] moves = new int[n];
+		for (int current = 0; current < tuples.size(); current++) {
+			int[] ids = tuples.get(current).ids;
+
+			boolean isFinal = true;
+			for (int i = 0; i < n; i++) {
+				closures[i] = compacts.get(i).getEpsClosure(ids[i]);
+				isFinal = isFinal && compacts.get(i).isFinalConfiguration(closures[i]);
+			}
+			if (isFinal)
+				return new Pair<Boolean, List<B>>(false, getTupleWitness(current, parents, guards, ba));
+
+			// Enumerate the combinations of moves, one per automaton, pruning
+			// as soon as the conjunction of the guards so far is unsatisfiable.
+			// moves[i] ranges over the moves out of the closure of ids[i].
+			List<A> prefixGuards = new ArrayList<A>(Collections.<A> nCopies(n + 1, null));
+			prefixGuards.set(0, ba.True());
+			int level = 0;
+			moves[0] = -1;
+			while (level >= 0) {
+				deadline.check();
+
+				moves[level] = nextTupleMove(compacts.get(level), closures[level], moves[level]);
+				if (moves[level] < 0) {
+					level--;
+					continue;
+				}
+
+				A guard = ba.MkAnd(prefixGuards.get(level), compacts.get(level).outGuard(moves[level]));
+				if (!ba.IsSatisfiable(guard))
+					continue;
+				prefixGuards.set(level + 1, guard);
+
+				if (level + 1 < n) {
+					level++;
+					moves[level] = -1;
+					continue;
+				}
+
+				int[] nextIds = new int[n];
+				for (int i = 0; i < n; i++)
+					nextIds[i] = compacts.get(i).outTarget(moves[i]);
+				StateTuple next = new StateTuple(nextIds);
+				if (!reached.containsKey(next)) {
+					reached.put(next, tuples.size());
+					tuples.add(next);
+					parents.add(current);
+					guards.add(guard);
+				}
+			}
+		}
+
+		return new Pair<Boolean, List<B>>(true, null);
+	}
+
+	// Returns the index of the move following move (-1 to get the first) among
+	// the moves out of the states in closure, -1 if there is none
+	private static <A, B> int nextTupleMove(CompactSFA<A, B> compact, int[] closure, int move) {
+		int k = 0;
+		if (move >= 0) {
+			// find the state of the closure the move leaves from
+			while (move >= compact.outEnd(closure[k]))
+				k++;
+			if (move + 1 < compact.outEnd(closure[k]))
+				return move + 1;
+			k++;
+		}
+		for (; k < closure.length; k++)
+			if (compact.outBegin(closure[k]) < compact.outEnd(closure[k]))
+				return compact.outBegin(closure[k]);
+		return -1;
+	}
+
+	// Rebuilds the word leading to the tuple with index tuple
+	private static <A, B> List<B> getTupleWitness(int tuple, List<Integer> parents, List<A> guards,
+			BooleanAlgebra<A, B> ba) throws TimeoutException {
+		LinkedList<B> witness = new LinkedList<B>();
+		for (int t = tuple; parents.get(t) >= 0; t = parents.get(t))
+			witness.addFirst(ba.generateWitness(guards.get(t)));
+		return witness;
+	}
+
 	/**
 	 * Computes <code>this</code> minus <code>aut</code> as a new SFA
 	 * 
@@ -387,9 +698,9 @@ public class SFA<P, S> extends Automaton<P, S> {
 	 */
 	public static <A, B> SFA<A, B> difference(SFA<A, B> aut1, SFA<A, B> aut2, BooleanAlgebra<A, B> ba, long timeout)
 			throws TimeoutException {
-		long startTime = System.currentTimeMillis();
-		SFA<A, B> compAut2 = aut2.complement(ba, timeout);
-		return aut1.intersectionWith(compAut2, ba, timeout - (System.currentTimeMillis() - startTime));
+		Deadline deadline = Deadline.after(timeout);
+		SFA<A, B> compAut2 = aut2.complement(ba, deadline.remaining());
+		return aut1.intersectionWith(compAut2, ba, deadline.remaining());
 	}
 
 	/**
@@ -530,16 +841,35 @@ public class SFA<P, S> extends Automaton<P, S> {
 	 * @throws TimeoutException
 	 */
 	public SFA<P, S> removeEpsilonMoves(BooleanAlgebra<P, S> ba) throws TimeoutException {
-		return removeEpsilonMovesFrom(this, ba);
+		return removeEpsilonMovesFrom(this, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return an equivalent copy without epsilon moves
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> removeEpsilonMoves(BooleanAlgebra<P, S> ba, long timeout) throws TimeoutException {
+		return removeEpsilonMovesFrom(this, ba, timeout);
 	}
 
 	/**
 	 * @return an equivalent copy without epsilon moves
 	 * @throws TimeoutException
 	 */
-	@SuppressWarnings("unchecked")
 	public static <A, B> SFA<A, B> removeEpsilonMovesFrom(SFA<A, B> aut, BooleanAlgebra<A, B> ba)
 			throws TimeoutException {
+		return removeEpsilonMovesFrom(aut, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return an equivalent copy without epsilon moves
+	 * @throws TimeoutException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A, B> SFA<A, B> removeEpsilonMovesFrom(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
 
 		if (aut.isEpsilonFree)
 			return (SFA<A, B>) aut.clone();
@@ -558,6 +888,8 @@ public class SFA<P, S> extends Automaton<P, S> {
 		toVisitStates.add(reachableFromInit);
 
 		while (!toVisitStates.isEmpty()) {
+			deadline.check();
+
 			Collection<Integer> currState = toVisitStates.removeFirst();
 			int currStateId = reachedStates.get(currState);
 
@@ -624,7 +956,7 @@ public class SFA<P, S> extends Automaton<P, S> {
 			return (SFA<A, B>) aut.clone();
 		}
 
-		long startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
 
 		SFA<A, B> sfa = aut;
 		if (!aut.isDeterministic(ba))
@@ -637,8 +969,7 @@ public class SFA<P, S> extends Automaton<P, S> {
 		int sinkState = sfa.maxStateId + 1;
 		boolean addSink = false;
 		for (Integer state : sfa.states) {
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException();
+			deadline.check();
 
 			A totGuard = null;
 			for (SFAInputMove<A, B> move : sfa.getInputMovesFrom(state)) {
@@ -751,7 +1082,7 @@ public class SFA<P, S> extends Automaton<P, S> {
 	private static <A, B> Pair<Boolean, List<A>> areEquivalentSymbolicWitness(SFA<A, B> aut1, SFA<A, B> aut2,
 			BooleanAlgebra<A, B> ba, long timeout) throws TimeoutException {
 
-		long startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
 
 		boolean isF1=aut1.isFinalState(aut1.initialState);
 		boolean isF2=aut2.isFinalState(aut2.initialState);
@@ -770,8 +1101,7 @@ public class SFA<P, S> extends Automaton<P, S> {
 		
 		while (!toVisit.isEmpty()) {
 
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException();
+			deadline.check();
 
 			Pair<Integer, Integer> curr = toVisit.removeFirst();
 			List<A> currWitness = witnesses.get(curr);
@@ -818,31 +1148,16 @@ public class SFA<P, S> extends Automaton<P, S> {
 	 */
 	public boolean isHopcroftKarpEquivalentTo(SFA<P, S> aut, BooleanAlgebra<P, S> ba, long timeout)
 			throws TimeoutException {
-		long startTime = System.currentTimeMillis();
-		SFA<P, S> tmp1 = this.removeEpsilonMoves(ba);
-
-		long leftover = timeout - (System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
-
-		tmp1 = tmp1.mkTotal(ba, leftover);
-
-		leftover = leftover - (System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
+		SFA<P, S> tmp1 = this.removeEpsilonMoves(ba, deadline.remaining());
+		tmp1 = tmp1.mkTotal(ba, deadline.remaining());
 		tmp1 = tmp1.normalize(ba);
 
-		leftover = leftover - (System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
-		SFA<P, S> tmp2 = aut.removeEpsilonMoves(ba);
-
-		leftover = leftover - (System.currentTimeMillis() - startTime);
-		startTime = System.currentTimeMillis();
-
-		tmp2 = tmp2.mkTotal(ba, leftover);
+		SFA<P, S> tmp2 = aut.removeEpsilonMoves(ba, deadline.remaining());
+		tmp2 = tmp2.mkTotal(ba, deadline.remaining());
 		tmp2 = tmp2.normalize(ba);
 
-		leftover = leftover - (System.currentTimeMillis() - startTime);
-
-		return areHKEquivalentNondet(tmp1, tmp2, ba, leftover);
+		return areHKEquivalentNondet(tmp1, tmp2, ba, deadline.remaining());
 	}
 			
 
@@ -854,10 +1169,19 @@ public class SFA<P, S> extends Automaton<P, S> {
 	@SuppressWarnings("unused")
 	private static <A, B> boolean areHopcroftKarpEquivalent(SFA<A, B> aut1, SFA<A, B> aut2,
 			BooleanAlgebra<A, B> ba, long timeout) throws TimeoutException {
+		Metrics metrics = Metrics.begin("SFA.areHopcroftKarpEquivalent");
+		metrics.setTimeout(timeout);
+		metrics.start(Timer.FULL);
+		try {
+			return areHopcroftKarpEquivalent(aut1, aut2, ba, timeout, metrics);
+		} finally {
+			metrics.end();
+		}
+	}
 
-		Timers.setForCongruence();
-
-		long startTime = System.currentTimeMillis();
+	private static <A, B> boolean areHopcroftKarpEquivalent(SFA<A, B> aut1, SFA<A, B> aut2,
+			BooleanAlgebra<A, B> ba, long timeout, Metrics metrics) throws TimeoutException {
+		Deadline deadline = Deadline.after(timeout);
 		UnionFindHopKarp<B> ds = new UnionFindHopKarp<>();
 		int offset = aut1.stateCount();
 
@@ -873,10 +1197,9 @@ public class SFA<P, S> extends Automaton<P, S> {
 		LinkedList<Pair<Integer, Integer>> toVisit = new LinkedList<>();
 		toVisit.add(new Pair<Integer, Integer>(aut1.initialState, aut2.initialState));
 		while (!toVisit.isEmpty()) {
-			Timers.oneMoreState();
+			metrics.increment(Counter.EXPLORED_STATES);
 
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException();
+			deadline.check();
 
 			Pair<Integer, Integer> curr = toVisit.removeFirst();
 			for (SFAInputMove<A, B> move1 : aut1.getInputMovesFrom(curr.first))
@@ -910,8 +1233,20 @@ public class SFA<P, S> extends Automaton<P, S> {
     public static <A, B> boolean areHKEquivalentNondet(SFA<A,B> aut1, SFA<A,B> aut2,
     		BooleanAlgebra<A, B> ba, long timeout) throws TimeoutException
     {
-    	Timers.setForCongruence();
-    	long startTime = System.currentTimeMillis();
+    	Metrics metrics = Metrics.begin("SFA.areHKEquivalentNondet");
+    	metrics.setTimeout(timeout);
+    	metrics.start(Timer.FULL);
+    	try {
+    		return areHKEquivalentNondet(aut1, aut2, ba, timeout, metrics);
+    	} finally {
+    		metrics.end();
+    	}
+    }
+
+    private static <A, B> boolean areHKEquivalentNondet(SFA<A,B> aut1, SFA<A,B> aut2,
+    		BooleanAlgebra<A, B> ba, long timeout, Metrics metrics) throws TimeoutException
+    {
+    	Deadline deadline = Deadline.after(timeout);
     	
     	UnionFindHopKarp<B> ds = new UnionFindHopKarp<>();
 
@@ -965,10 +1300,9 @@ public class SFA<P, S> extends Automaton<P, S> {
 
         while (toVisit.size() > 0)
         {
-        	Timers.oneMoreState();
+        	metrics.increment(Counter.EXPLORED_STATES);
 
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException();
+			deadline.check();
 
             Pair<Integer,Integer> curr = toVisit.get(0);
             toVisit.removeFirst();
@@ -991,8 +1325,8 @@ public class SFA<P, S> extends Automaton<P, S> {
             for(SFAInputMove<A, B> m: movesFromCurr2)
             	predicates2.add(m.guard);
 
-            Collection<Pair<A, ArrayList<Integer>>> minterms1 = ba.GetMinterms(predicates1);
-            Collection<Pair<A, ArrayList<Integer>>> minterms2 = ba.GetMinterms(predicates2);
+            Collection<Pair<A, ArrayList<Integer>>> minterms1 = ba.GetMinterms(predicates1, deadline.remaining());
+            Collection<Pair<A, ArrayList<Integer>>> minterms2 = ba.GetMinterms(predicates2, deadline.remaining());
 
 
             for (Pair<A, ArrayList<Integer>> minterm1: minterms1)
@@ -1150,14 +1484,38 @@ public class SFA<P, S> extends Automaton<P, S> {
 		return determinize(this, ba, timeout);
 	}
 
+	/**
+	 * @return an equivalent deterministic SFA
+	 * @throws BudgetExceededException
+	 *             if the construction exceeds <code>budget</code>
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> determinize(BooleanAlgebra<P, S> ba, DeterminizationBudget budget, long timeout)
+			throws TimeoutException {
+		return determinize(this, ba, budget, timeout);
+	}
+
 	/**
 	 * @return a deterministic SFA that is equivalent to <code>aut</code>
+	 * @throws BudgetExceededException
+	 *             if the construction exceeds the default budget
 	 * @throws TimeoutException
 	 */
 	public static <A, B> SFA<A, B> determinize(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
 			throws TimeoutException {
+		return determinize(aut, ba, DeterminizationBudget.DEFAULT, timeout);
+	}
+
+	/**
+	 * @return a deterministic SFA that is equivalent to <code>aut</code>
+	 * @throws BudgetExceededException
+	 *             if the construction exceeds <code>budget</code>
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> determinize(SFA<A, B> aut, BooleanAlgebra<A, B> ba, DeterminizationBudget budget,
+			long timeout) throws TimeoutException {
 
-		long startTime = System.currentTimeMillis();
+		Deadline deadline = Deadline.after(timeout);
 
 		if (aut.isDeterministic(ba))
 			return aut;
@@ -1167,79 +1525,91 @@ public class SFA<P, S> extends Automaton<P, S> {
 		if (!aut.isEpsilonFree)
 			autChecked = aut.removeEpsilonMoves(ba);
 
+		// subset states are sets of dense state ids
+		CompactSFA<A, B> compact = autChecked.getCompactRepresentation();
+		BitSet compactFinalStates = compact.getFinalStates();
+
 		// components of new SFA
 		Collection<SFAMove<A, B>> transitions = new ArrayList<SFAMove<A, B>>();
 		Integer initialState = 0;
 		Collection<Integer> finalStates = new HashSet<Integer>();
 
-		// reached contains the subset states we discovered and maps them to a
-		// stateId
-		HashMap<Collection<Integer>, Integer> reachedStates = new HashMap<Collection<Integer>, Integer>();
-		// toVisit contains the subset states we still have not explored
-		LinkedList<Collection<Integer>> toVisitStates = new LinkedList<Collection<Integer>>();
-
-		// the initial state is the set {aut.initialState}
-		Collection<Integer> detInitialState = new HashSet<Integer>();
-		detInitialState.add(initialState);
-		initialState = 0;
+		// reachedStates hash-conses the subset states we discovered and maps
+		// them to a stateId. Ids are assigned in visiting order, so the subset
+		// state with id i is in position i of subsetStates
+		HashMap<ImmutableBitSet, Integer> reachedStates = new HashMap<ImmutableBitSet, Integer>();
+		ArrayList<ImmutableBitSet> subsetStates = new ArrayList<ImmutableBitSet>();
 
+		// the initial state is the set {aut.initialState}, whose dense id is 0
+		ImmutableBitSet detInitialState = ImmutableBitSet.of(0);
 		reachedStates.put(detInitialState, 0);
-		toVisitStates.add(detInitialState);
+		subsetStates.add(detInitialState);
 
-		long availableMemory = Runtime.getRuntime().totalMemory();
+		// estimated bytes of the subset states and transitions built so far
+		long bytes = DeterminizationBudget.BYTES_PER_STATE
+				+ DeterminizationBudget.BYTES_PER_WORD * detInitialState.wordCount();
 
 		// Explore the automaton until no new subset states can be reached
-		while (!toVisitStates.isEmpty()) {
-
-			long freeMemory = Runtime.getRuntime().freeMemory();
-			if (freeMemory < 0.1 * availableMemory)
-				throw new TimeoutException("Out of memory");
+		for (int currentStateId = 0; currentStateId < subsetStates.size(); currentStateId++) {
 
-			if (System.currentTimeMillis() - startTime > timeout)
-				throw new TimeoutException();
+			deadline.check();
 
-			Collection<Integer> currentState = toVisitStates.removeFirst();
-			int currentStateId = reachedStates.get(currentState);
+			ImmutableBitSet currentState = subsetStates.get(currentStateId);
 
 			// check if final
-			if (autChecked.isFinalConfiguration(currentState))
+			if (currentState.intersects(compactFinalStates))
 				finalStates.add(currentStateId);
 
-			// get all the moves out of the states in the current subset
-			ArrayList<SFAInputMove<A, B>> movesFromCurrState = new ArrayList<SFAInputMove<A, B>>(
-					autChecked.getInputMovesFrom(currentState));
-
-			// put in a separate list all the predicates of the moves and in the
-			// same order. We will use them to build the minterms
+			// get all the moves out of the states in the current subset and put
+			// in a separate list all the predicates of the moves in the same
+			// order. We will use them to build the minterms
 			ArrayList<A> predicatesOfMoves = new ArrayList<A>();
-			for (SFAInputMove<A, B> inter : movesFromCurrState)
-				predicatesOfMoves.add(inter.guard);
+			int[] targetsOfMoves = new int[8];
+			for (int st = currentState.nextSetBit(0); st >= 0; st = currentState.nextSetBit(st + 1))
+				for (int i = compact.outBegin(st); i < compact.outEnd(st); i++) {
+					if (predicatesOfMoves.size() == targetsOfMoves.length)
+						targetsOfMoves = Arrays.copyOf(targetsOfMoves, 2 * targetsOfMoves.length);
+					targetsOfMoves[predicatesOfMoves.size()] = compact.outTarget(i);
+					predicatesOfMoves.add(compact.outGuard(i));
+				}
 
 			// build the minterms using the predicates and iterate over them:
 			// each minterm is a predicate together with the the corresponding
 			// set of transition IDs
-			for (Pair<A, ArrayList<Integer>> minterm : ba.GetMinterms(predicatesOfMoves,
-					timeout - (System.currentTimeMillis() - startTime))) {
+			for (Pair<A, ArrayList<Integer>> minterm : ba.GetMinterms(predicatesOfMoves, deadline.remaining())) {
 
-				if (System.currentTimeMillis() - startTime > timeout)
-					throw new TimeoutException();
+				deadline.check();
 
 				A guard = minterm.first;
 
 				// The new state contains all the target states of the moves
 				// with bit 1
 				ArrayList<Integer> moveBits = minterm.second;
-				Collection<Integer> toState = new HashSet<Integer>();
+				BitSet toState = new BitSet(compact.stateCount());
 				for (int moveIndex = 0; moveIndex < moveBits.size(); moveIndex++)
 					if (moveBits.get(moveIndex) == 1)
 						// add the target state of the moveIndex-th move in the
 						// list
-						toState.add(movesFromCurrState.get(moveIndex).to);
+						toState.set(targetsOfMoves[moveIndex]);
 
 				// Add new move if target state is not the empty set
-				if (toState.size() > 0) {
-					int toStateId = getStateId(toState, reachedStates, toVisitStates);
+				if (!toState.isEmpty()) {
+					ImmutableBitSet toSubset = ImmutableBitSet.of(toState);
+					Integer toStateId = reachedStates.get(toSubset);
+					if (toStateId == null) {
+						toStateId = subsetStates.size();
+						reachedStates.put(toSubset, toStateId);
+						subsetStates.add(toSubset);
+						bytes += DeterminizationBudget.BYTES_PER_STATE
+								+ DeterminizationBudget.BYTES_PER_WORD * toSubset.wordCount();
+					}
 					transitions.add(new SFAInputMove<A, B>(currentStateId, toStateId, guard));
+					bytes += DeterminizationBudget.BYTES_PER_TRANSITION;
+
+					Resource exceeded = budget.exceeded(subsetStates.size(), transitions.size(), bytes);
+					if (exceeded != null)
+						throw new BudgetExceededException(exceeded, subsetStates.size(), currentStateId,
+								transitions.size(), bytes);
 				}
 			}
 		}
@@ -1308,7 +1678,15 @@ public class SFA<P, S> extends Automaton<P, S> {
 	 * @throws TimeoutException
 	 */
 	public SFA<P, S> minimize(BooleanAlgebra<P, S> ba) throws TimeoutException {
-		return getMinimalOf(this, ba);
+		return getMinimalOf(this, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return a minimized copy of the SFA
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> minimize(BooleanAlgebra<P, S> ba, long timeout) throws TimeoutException {
+		return getMinimalOf(this, ba, timeout);
 	}
 
 	/**
@@ -1316,15 +1694,78 @@ public class SFA<P, S> extends Automaton<P, S> {
 	 * @throws TimeoutException
 	 */
 	public static <A, B> SFA<A, B> getMinimalOf(SFA<A, B> aut, BooleanAlgebra<A, B> ba) throws TimeoutException {
+		return getMinimalOf(aut, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return a minimized copy of <code>aut<code>
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> getMinimalOf(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+		return new SFAMinimizer<A, B>(ba).minimize(aut, timeout);
+	}
+
+	/**
+	 * @return an equivalent SFA where forward bisimilar states are merged,
+	 *         computed without determinizing
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> reduceByBisimulation(BooleanAlgebra<P, S> ba) throws TimeoutException {
+		return reduceByBisimulation(this, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return an equivalent SFA where forward bisimilar states of
+	 *         <code>aut</code> are merged, computed without determinizing
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> reduceByBisimulation(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+		return SFAReduction.reduceByBisimulation(aut, ba, timeout);
+	}
+
+	/**
+	 * @return an equivalent SFA where states simulating each other are
+	 *         merged, computed without determinizing. It merges at least the
+	 *         states merged by <code>reduceByBisimulation</code>, but takes
+	 *         time quadratic in the number of states.
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> reduceBySimulation(BooleanAlgebra<P, S> ba) throws TimeoutException {
+		return reduceBySimulation(this, ba, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return an equivalent SFA where states of <code>aut</code> simulating
+	 *         each other are merged, computed without determinizing
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> reduceBySimulation(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+		return SFAReduction.reduceBySimulation(aut, ba, timeout);
+	}
+
+	/**
+	 * @return a minimized copy of <code>aut<code> computed with the original
+	 *         implementation based on <code>Block</code>, which takes
+	 *         quadratic time in the number of states. Kept as a reference for
+	 *         {@link SFAMinimizer}, which builds the same SFA.
+	 * @throws TimeoutException
+	 */
+	public static <A, B> SFA<A, B> getMinimalOfWithBlocks(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
 
 		if (aut.isEmpty)
 			return getEmptySFA(ba);
 
 		SFA<A, B> totalAut = aut;
 		if (!aut.isDeterministic)
-			totalAut = aut.determinize(ba);
+			totalAut = aut.determinize(ba, deadline.remaining());
 
-		totalAut = totalAut.mkTotal(ba);
+		totalAut = totalAut.mkTotal(ba, deadline.remaining());
 
 		// This algorithm is presented the POPL14 paper by D'Antoni and Veanes
 		// Minimization of symbolic automata
@@ -1354,6 +1795,8 @@ public class SFA<P, S> extends Automaton<P, S> {
 
 		// Continue until all blocks have been split
 		while (!toExploreBlocks.isEmpty()) {
+			deadline.check();
+
 			Block currentBlock = toExploreBlocks.pop();
 
 			// stateToPredIntoCurrentBlock(s) contains the predicate for which
@@ -1674,6 +2117,16 @@ public class SFA<P, S> extends Automaton<P, S> {
 		return SAFA.MkSAFA(moves, init, finalStates, ba, false, true, false);
 	}
 
+	/**
+	 * Returns a table-driven matcher equivalent to <code>aut</code>
+	 * 
+	 * @throws TimeoutException
+	 */
+	public static CompiledCharSFA compile(SFA<CharPred, Character> aut, UnaryCharIntervalSolver ba)
+			throws TimeoutException {
+		return CompiledCharSFA.compile(aut, ba);
+	}
+
 	/**
 	 * Checks whether the automaton is deterministic
 	 * 
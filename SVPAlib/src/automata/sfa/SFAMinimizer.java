@@ -0,0 +1,342 @@
+package automata.sfa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import utilities.Deadline;
+
+/**
+ * Minimization of SFAs by partition refinement, following the symbolic
+ * version of Hopcroft's algorithm presented in the POPL14 paper by D'Antoni
+ * and Veanes (Minimization of symbolic automata).
+ *
+ * States are the dense ids of the {@link CompactSFA} of the total automaton.
+ * Blocks are doubly-linked lists threaded through per-state arrays, so moving
+ * a state to a new block takes constant time. The predecessors of a splitter
+ * are found with the inverse-transition index of the compact representation,
+ * and splitting the blocks that contain them only visits the predecessors,
+ * whatever the size of the blocks. The worklist keeps a membership flag per
+ * block. An instance collects the statistics of the minimizations it runs and
+ * must not be shared between threads.
+ *
+ * @param
+ * 			<P>
+ *            set of predicates over the domain S
+ * @param <S>
+ *            domain of the automaton alphabet
+ */
+public class SFAMinimizer<P, S> {
+
+	private final BooleanAlgebra<P, S> ba;
+
+	// partition: block ids of the states, and for every block its first
+	// state and size. States of a block are linked through next and prev.
+	private int[] blockOf;
+	private int[] next;
+	private int[] prev;
+	private int[] head;
+	private int[] size;
+	private int blockCount;
+
+	// worklist of splitters with O(1) membership
+	private int[] worklist;
+	private int worklistSize;
+	private boolean[] inWorklist;
+
+	// statistics
+	private long splitters;
+	private long splits;
+
+	public SFAMinimizer(BooleanAlgebra<P, S> ba) {
+		this.ba = ba;
+	}
+
+	/**
+	 * @return a minimized copy of <code>aut</code>
+	 * @throws TimeoutException
+	 */
+	public SFA<P, S> minimize(SFA<P, S> aut, long timeout) throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
+
+		if (aut.isEmpty())
+			return SFA.getEmptySFA(ba);
+
+		SFA<P, S> totalAut = aut;
+		if (!aut.isDeterministic())
+			totalAut = aut.determinize(ba, deadline.remaining());
+		totalAut = totalAut.mkTotal(ba, deadline.remaining());
+
+		CompactSFA<P, S> compact = totalAut.getCompactRepresentation();
+		refine(compact, deadline);
+
+		// One state per block, numbered in the order of totalAut.getStates()
+		// as in SFA.getMinimalOfWithBlocks
+		int[] blockToClass = new int[blockCount];
+		for (int b = 0; b < blockCount; b++)
+			blockToClass[b] = -1;
+		int classCount = 0;
+		List<List<Integer>> classStates = new ArrayList<List<Integer>>();
+		Collection<Integer> finalStates = new HashSet<Integer>();
+		for (Integer state : totalAut.getStates()) {
+			int b = blockOf[compact.getId(state)];
+			if (blockToClass[b] < 0) {
+				blockToClass[b] = classCount++;
+				classStates.add(new ArrayList<Integer>());
+			}
+			classStates.get(blockToClass[b]).add(state);
+			if (totalAut.isFinalState(state))
+				finalStates.add(blockToClass[b]);
+		}
+
+		Collection<SFAMove<P, S>> transitions = new ArrayList<SFAMove<P, S>>();
+		for (int c = 0; c < classCount; c++)
+			for (SFAInputMove<P, S> t : totalAut.getInputMovesFrom(classStates.get(c)))
+				transitions.add(new SFAInputMove<P, S>(c, blockToClass[blockOf[compact.getId(t.to)]], t.guard));
+
+		int initialState = blockToClass[blockOf[0]];
+
+		// release the partition
+		blockOf = next = prev = head = size = worklist = null;
+		inWorklist = null;
+
+		return SFA.MkSFA(transitions, initialState, finalStates, ba, false, true);
+	}
+
+	// Computes the coarsest partition of the states of the total deterministic
+	// automaton compact that is compatible with its moves
+	@SuppressWarnings("unchecked")
+	private void refine(CompactSFA<P, S> compact, Deadline deadline) throws TimeoutException {
+		int n = compact.stateCount();
+		blockOf = new int[n];
+		next = new int[n];
+		prev = new int[n];
+		head = new int[n];
+		size = new int[n];
+		blockCount = 0;
+		worklist = new int[n];
+		worklistSize = 0;
+		inWorklist = new boolean[n];
+
+		// Initially split states into final and non-final
+		int finalBlock = -1;
+		int nonFinalBlock = -1;
+		for (int q = n - 1; q >= 0; q--) {
+			if (compact.isFinal(q)) {
+				if (finalBlock < 0)
+					finalBlock = newBlock();
+				addToBlock(q, finalBlock);
+			} else {
+				if (nonFinalBlock < 0)
+					nonFinalBlock = newBlock();
+				addToBlock(q, nonFinalBlock);
+			}
+		}
+
+		// Initialize the worklist with the smallest block
+		if (finalBlock >= 0 && nonFinalBlock >= 0)
+			push(size[nonFinalBlock] < size[finalBlock] ? nonFinalBlock : finalBlock);
+
+		// predInto[q] is the predicate for which a move of q goes into the
+		// splitter, touched lists the states with a predicate
+		P[] predInto = (P[]) new Object[n];
+		int[] touched = new int[n];
+		// stamps used to collect every relevant block once
+		int[] blockStamp = new int[n];
+		int stamp = 0;
+		int[] relevant = new int[n];
+		// number of predecessors in a relevant block, and the block they are
+		// moved to (-1 if they are all the states of the block)
+		int[] touchedIn = new int[n];
+		int[] splitOf = new int[n];
+
+		while (worklistSize > 0) {
+			deadline.check();
+
+			int splitter = worklist[--worklistSize];
+			inWorklist[splitter] = false;
+			splitters++;
+
+			// Predicates into the splitter, through the inverse index
+			int touchedCount = 0;
+			for (int q = head[splitter]; q >= 0; q = next[q])
+				for (int i = compact.inBegin(q); i < compact.inEnd(q); i++) {
+					int p = compact.inSource(i);
+					P guard = compact.inMove(i).guard;
+					if (predInto[p] == null) {
+						predInto[p] = guard;
+						touched[touchedCount++] = p;
+					} else
+						predInto[p] = ba.MkOr(predInto[p], guard);
+				}
+
+			// Split the blocks intersecting the predecessors, counting the
+			// predecessors of every block so that only they are visited
+			stamp++;
+			int relevantCount = 0;
+			for (int i = 0; i < touchedCount; i++) {
+				int b = blockOf[touched[i]];
+				if (blockStamp[b] != stamp) {
+					blockStamp[b] = stamp;
+					touchedIn[b] = 0;
+					relevant[relevantCount++] = b;
+				}
+				touchedIn[b]++;
+			}
+			for (int r = 0; r < relevantCount; r++) {
+				int b = relevant[r];
+				splitOf[b] = touchedIn[b] < size[b] ? newBlock() : -1;
+			}
+			for (int i = 0; i < touchedCount; i++) {
+				int q = touched[i];
+				if (splitOf[blockOf[q]] >= 0)
+					moveToBlock(q, splitOf[blockOf[q]]);
+			}
+			for (int r = 0; r < relevantCount; r++)
+				if (splitOf[relevant[r]] >= 0)
+					addSplit(relevant[r], splitOf[relevant[r]]);
+
+			// Split the blocks whose states go into the splitter on different
+			// predicates
+			boolean iterate = true;
+			while (iterate) {
+				iterate = false;
+				deadline.check();
+
+				stamp++;
+				relevantCount = 0;
+				for (int i = 0; i < touchedCount; i++) {
+					int b = blockOf[touched[i]];
+					if (blockStamp[b] != stamp) {
+						blockStamp[b] = stamp;
+						relevant[relevantCount++] = b;
+					}
+				}
+
+				for (int r = 0; r < relevantCount; r++) {
+					int b = relevant[r];
+
+					// states of b in the same local minterm as the first one
+					int first = head[b];
+					P psi = predInto[first];
+					boolean splitterFound = false;
+					List<Integer> splitStates = new ArrayList<Integer>();
+					splitStates.add(first);
+
+					for (int q = next[first]; q >= 0; q = next[q]) {
+						P phi = predInto[q];
+						if (splitterFound) {
+							P conj = ba.MkAnd(psi, phi);
+							if (ba.IsSatisfiable(conj)) {
+								splitStates.add(q);
+								psi = conj;
+							}
+						} else {
+							P conj = ba.MkAnd(psi, ba.MkNot(phi));
+							if (ba.IsSatisfiable(conj)) {
+								psi = conj; // refine the local minterm
+								splitterFound = true;
+							} else { // psi implies phi
+								conj = ba.MkAnd(phi, ba.MkNot(psi));
+								if (ba.IsSatisfiable(conj)) {
+									splitStates.clear();
+									splitStates.add(q);
+									psi = conj;
+									splitterFound = true;
+								} else {
+									splitStates.add(q);
+								}
+							}
+						}
+					}
+
+					// Change only if the split made the block smaller
+					if (splitStates.size() < size[b]) {
+						iterate = iterate || size[b] > 2;
+						int split = newBlock();
+						for (int q : splitStates)
+							moveToBlock(q, split);
+						addSplit(b, split);
+					}
+				}
+			}
+
+			for (int i = 0; i < touchedCount; i++)
+				predInto[touched[i]] = null;
+		}
+	}
+
+	// Updates the worklist after block was split into block and split
+	private void addSplit(int block, int split) {
+		splits++;
+		if (inWorklist[block])
+			push(split);
+		else if (size[block] <= size[split])
+			push(block);
+		else
+			push(split);
+	}
+
+	private void push(int block) {
+		if (!inWorklist[block]) {
+			inWorklist[block] = true;
+			worklist[worklistSize++] = block;
+		}
+	}
+
+	private int newBlock() {
+		head[blockCount] = -1;
+		size[blockCount] = 0;
+		return blockCount++;
+	}
+
+	private void addToBlock(int q, int block) {
+		blockOf[q] = block;
+		prev[q] = -1;
+		next[q] = head[block];
+		if (head[block] >= 0)
+			prev[head[block]] = q;
+		head[block] = q;
+		size[block]++;
+	}
+
+	private void moveToBlock(int q, int block) {
+		int old = blockOf[q];
+		if (prev[q] >= 0)
+			next[prev[q]] = next[q];
+		else
+			head[old] = next[q];
+		if (next[q] >= 0)
+			prev[next[q]] = prev[q];
+		size[old]--;
+		addToBlock(q, block);
+	}
+
+	// ------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------
+
+	/**
+	 * @return number of splitters taken from the worklist
+	 */
+	public long getSplitters() {
+		return splitters;
+	}
+
+	/**
+	 * @return number of block splits
+	 */
+	public long getSplits() {
+		return splits;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SFAMinimizer: %d splitters, %d splits", splitters, splits);
+	}
+}
@@ -0,0 +1,183 @@
+package automata.sfa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import utilities.Deadline;
+
+/**
+ * Language preserving reductions of nondeterministic SFAs that merge
+ * equivalent states without determinizing. States are the dense ids of the
+ * {@link CompactSFA} of the epsilon-free automaton.
+ */
+final class SFAReduction {
+
+	private SFAReduction() {
+	}
+
+	/**
+	 * @return the quotient of <code>aut</code> by the coarsest forward
+	 *         bisimulation
+	 * @throws TimeoutException
+	 */
+	static <A, B> SFA<A, B> reduceByBisimulation(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+		Deadline deadline = Deadline.after(timeout);
+		SFA<A, B> epsFree = aut.removeEpsilonMoves(ba, deadline.remaining());
+		CompactSFA<A, B> compact = epsFree.getCompactRepresentation();
+		return quotient(epsFree, compact, bisimulationClasses(compact, ba, deadline), ba);
+	}
+
+	/**
+	 * @return the quotient of <code>aut</code> by simulation equivalence
+	 * @throws TimeoutException
+	 */
+	static <A, B> SFA<A, B> reduceBySimulation(SFA<A, B> aut, BooleanAlgebra<A, B> ba, long timeout)
+			throws TimeoutException {
+		Deadline deadline = Deadline.after(timeout);
+		SFA<A, B> epsFree = aut.removeEpsilonMoves(ba, deadline.remaining());
+		CompactSFA<A, B> compact = epsFree.getCompactRepresentation();
+		return quotient(epsFree, compact, simulationClasses(compact, ba, deadline), ba);
+	}
+
+	// Partition refinement: two states stay in the same block iff they have
+	// the same finality and, for every block, their moves into the block are
+	// labeled with equivalent predicates
+	@SuppressWarnings("unchecked")
+	private static <A, B> int[] bisimulationClasses(CompactSFA<A, B> compact, BooleanAlgebra<A, B> ba,
+			Deadline deadline) throws TimeoutException {
+		int n = compact.stateCount();
+		int[] blockOf = new int[n];
+		int blockCount = 0;
+		int finalBlock = -1, nonFinalBlock = -1;
+		for (int q = 0; q < n; q++)
+			if (compact.isFinal(q)) {
+				if (finalBlock < 0)
+					finalBlock = blockCount++;
+				blockOf[q] = finalBlock;
+			} else {
+				if (nonFinalBlock < 0)
+					nonFinalBlock = blockCount++;
+				blockOf[q] = nonFinalBlock;
+			}
+
+		A[] predInto = (A[]) new Object[n];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int splitter = 0; splitter < blockCount; splitter++) {
+				deadline.check();
+
+				// predicate of the moves of every state into the splitter
+				for (int q = 0; q < n; q++) {
+					A pred = null;
+					for (int i = compact.outBegin(q); i < compact.outEnd(q); i++)
+						if (blockOf[compact.outTarget(i)] == splitter)
+							pred = pred == null ? compact.outGuard(i) : ba.MkOr(pred, compact.outGuard(i));
+					predInto[q] = pred == null ? ba.False() : pred;
+				}
+
+				// split every block by the classes of equivalent predicates,
+				// the states in the class of the first state keep the block
+				int blocks = blockCount;
+				for (int b = 0; b < blocks; b++) {
+					List<Integer> reps = new ArrayList<Integer>();
+					List<Integer> repBlocks = new ArrayList<Integer>();
+					for (int q = 0; q < n; q++) {
+						if (blockOf[q] != b)
+							continue;
+						int k = 0;
+						while (k < reps.size() && !ba.AreEquivalent(predInto[reps.get(k)], predInto[q]))
+							k++;
+						if (k == reps.size()) {
+							reps.add(q);
+							repBlocks.add(k == 0 ? b : blockCount++);
+						}
+						blockOf[q] = repBlocks.get(k);
+					}
+					changed = changed || reps.size() > 1;
+				}
+			}
+		}
+		return blockOf;
+	}
+
+	// Greatest simulation preorder: sim[p][q] holds iff q simulates p, that
+	// is p final implies q final and every move p -phi-> p' is covered by
+	// moves q -psi-> q' with q' simulating p'. Mutually similar states are
+	// merged.
+	private static <A, B> int[] simulationClasses(CompactSFA<A, B> compact, BooleanAlgebra<A, B> ba,
+			Deadline deadline) throws TimeoutException {
+		int n = compact.stateCount();
+		boolean[][] sim = new boolean[n][n];
+		for (int p = 0; p < n; p++)
+			for (int q = 0; q < n; q++)
+				sim[p][q] = !compact.isFinal(p) || compact.isFinal(q);
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int p = 0; p < n; p++)
+				for (int q = 0; q < n; q++) {
+					if (p == q || !sim[p][q])
+						continue;
+					deadline.check();
+					for (int i = compact.outBegin(p); i < compact.outEnd(p) && sim[p][q]; i++) {
+						int pNext = compact.outTarget(i);
+						A covered = ba.False();
+						for (int j = compact.outBegin(q); j < compact.outEnd(q); j++)
+							if (sim[pNext][compact.outTarget(j)])
+								covered = ba.MkOr(covered, compact.outGuard(j));
+						if (ba.IsSatisfiable(ba.MkAnd(compact.outGuard(i), ba.MkNot(covered)))) {
+							sim[p][q] = false;
+							changed = true;
+						}
+					}
+				}
+		}
+
+		int[] classOf = new int[n];
+		for (int p = 0; p < n; p++) {
+			classOf[p] = p;
+			for (int q = 0; q < p; q++)
+				if (sim[p][q] && sim[q][p]) {
+					classOf[p] = classOf[q];
+					break;
+				}
+		}
+		return classOf;
+	}
+
+	// The SFA whose states are the classes of the states of aut, a class has
+	// the moves of all its states
+	private static <A, B> SFA<A, B> quotient(SFA<A, B> aut, CompactSFA<A, B> compact, int[] classOf,
+			BooleanAlgebra<A, B> ba) throws TimeoutException {
+		// renumber the classes in the order of the dense ids, so the class of
+		// the initial state is 0
+		int n = compact.stateCount();
+		int[] number = new int[n];
+		for (int i = 0; i < n; i++)
+			number[i] = -1;
+		int count = 0;
+		for (int q = 0; q < n; q++)
+			if (number[classOf[q]] < 0)
+				number[classOf[q]] = count++;
+
+		Collection<SFAMove<A, B>> transitions = new ArrayList<SFAMove<A, B>>();
+		Collection<Integer> finalStates = new HashSet<Integer>();
+		for (int q = 0; q < n; q++) {
+			int from = number[classOf[q]];
+			if (compact.isFinal(q))
+				finalStates.add(from);
+			for (int i = compact.outBegin(q); i < compact.outEnd(q); i++)
+				transitions.add(
+						new SFAInputMove<A, B>(from, number[classOf[compact.outTarget(i)]], compact.outGuard(i)));
+		}
+		return SFA.MkSFA(transitions, number[classOf[0]], finalStates, ba, false, true);
+	}
+}
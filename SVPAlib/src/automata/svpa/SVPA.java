@@ -16,6 +16,7 @@ import org.sat4j.specs.TimeoutException;
 
 import automata.AutomataException;
 import theory.BooleanAlgebra;
+import utilities.Deadline;
 import utilities.BitVecUtil;
 import utilities.Pair;
 
@@ -271,7 +272,10 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 			toVisitStates.add(p);
 		}
 
+		Deadline deadline = Deadline.current();
 		while (!toVisitStates.isEmpty()) {
+			deadline.check();
+
 			Collection<Integer> currState = toVisitStates.removeFirst();
 			int currStateId = reachedStates.get(currState);
 
@@ -340,8 +344,11 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 				toVisitStates.add(p);
 			}
 
+		Deadline deadline = Deadline.current();
 		// DFS to discover next states and transitions
 		while (!toVisitStates.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, Integer> currState = toVisitStates.removeFirst();
 			int currStateId = reachedStates.get(currState);
 
@@ -767,7 +774,9 @@ public class SVPA<U, S> extends VPAutomaton<U, S> {
 
 		Collection<Collection<Pair<Integer, Integer>>> previouslyVisited = new HashSet<Collection<Pair<Integer, Integer>>>();
 
+		Deadline deadline = Deadline.current();
 		while (toVisitStates.size() > 0) {
+			deadline.check();
 
 			// pop first state from tVisit and add to visited
 			currState = toVisitStates.removeFirst();
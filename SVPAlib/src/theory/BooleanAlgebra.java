@@ -12,6 +12,9 @@ import java.util.HashSet;
 
 import org.sat4j.specs.TimeoutException;
 
+import utilities.Deadline;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
 import utilities.Pair;
 
 /**
@@ -21,6 +24,9 @@ import utilities.Pair;
  */
 public abstract class BooleanAlgebra<P, S> {
 
+	// minterms cache, disabled by default
+	private MintermCache<P> mintermCache;
+
 	/**
 	 * @return the predicate accepting only <code>s</code>
 	 * @throws TimeoutException 
@@ -107,14 +113,8 @@ public abstract class BooleanAlgebra<P, S> {
 	 * @throws TimeoutException 
 	 */
 	public Collection<Pair<P, ArrayList<Integer>>> GetMinterms(
-			ArrayList<P> predicates) {
-		try {
-			return GetMinterms(predicates, True(), Long.MAX_VALUE);
-		} catch (TimeoutException e) {			
-			e.printStackTrace();
-			System.out.println("Minterm construction timeout");
-			return null;
-		}
+			ArrayList<P> predicates) throws TimeoutException {
+		return GetMinterms(predicates, Long.MAX_VALUE);
 	}
 	
 	/**
@@ -127,22 +127,44 @@ public abstract class BooleanAlgebra<P, S> {
 	 */
 	public Collection<Pair<P, ArrayList<Integer>>> GetMinterms(
 			ArrayList<P> predicates, long timeout) throws TimeoutException {
-		return GetMinterms(predicates, True(), timeout);
+		Collection<Pair<P, ArrayList<Integer>>> minterms;
+		if (mintermCache != null)
+			minterms = mintermCache.getMinterms(predicates, this, timeout);
+		else
+			minterms = GetMinterms(predicates, True(), timeout);
+		Metrics.current().add(Counter.MINTERMS, minterms.size());
+		return minterms;
+	}
+
+	/**
+	 * Sets the cache used by <code>GetMinterms</code>, null disables caching.
+	 * The same cache is shared by every algorithm using this algebra.
+	 */
+	public void setMintermCache(MintermCache<P> cache) {
+		mintermCache = cache;
+	}
+
+	/**
+	 * @return the cache used by <code>GetMinterms</code>, null if there is none
+	 */
+	public MintermCache<P> getMintermCache() {
+		return mintermCache;
 	}
 	
 	private Collection<Pair<P, ArrayList<Integer>>> GetMinterms(
 			ArrayList<P> predicates, P startPred, long timeout) throws TimeoutException {
 		HashSet<Pair<P, ArrayList<Integer>>> minterms = new HashSet<Pair<P, ArrayList<Integer>>>();
 		GetMintermsRec(predicates, 0, startPred, new ArrayList<Integer>(),
-				minterms, System.currentTimeMillis(), timeout);
+				minterms, Deadline.after(timeout));
 		return minterms;
 	}
 
 	private void GetMintermsRec(ArrayList<P> predicates, int n, P currPred,
 			ArrayList<Integer> setBits,
-			HashSet<Pair<P, ArrayList<Integer>>> minterms, long startime, long timeout) throws TimeoutException {
+			HashSet<Pair<P, ArrayList<Integer>>> minterms, Deadline deadline) throws TimeoutException {
 		
-		if(System.currentTimeMillis() - startime > timeout || n>2500)
+		deadline.check();
+		if(n>2500)
 			throw new TimeoutException("Minterm construction timeout");
 			
 		if (!IsSatisfiable(currPred))
@@ -155,13 +177,13 @@ public abstract class BooleanAlgebra<P, S> {
 			posList.add(1);
 			P pn =predicates.get(n);
 			GetMintermsRec(predicates, n + 1,
-					MkAnd(currPred, pn), posList, minterms, startime, timeout);
+					MkAnd(currPred, pn), posList, minterms, deadline);
 
 			ArrayList<Integer> negList = new ArrayList<Integer>(setBits);
 			negList.add(0);
 			GetMintermsRec(predicates, n + 1,
 					MkAnd(currPred, MkNot(pn)), negList,
-					minterms, startime, timeout);
+					minterms, deadline);
 		}
 	}
 	
@@ -0,0 +1,259 @@
+package theory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+import org.sat4j.specs.TimeoutException;
+
+import utilities.Deadline;
+import utilities.Pair;
+
+/**
+ * Cache of minterms shared by all the algorithms using a Boolean algebra.
+ *
+ * Minterms are stored in a trie keyed on the identity of the predicates: the
+ * node reached by the sequence [p1,...,pk] contains the satisfiable minterms of
+ * [p1,...,pk]. A query for [p1,...,pn] reuses the deepest node matching a
+ * prefix of the sequence and only refines the minterms of that node with the
+ * remaining predicates, one predicate at a time. Algebras with a dedicated
+ * minterm computation only store the node of the whole sequence, the nodes of
+ * its prefixes are then created without minterms. A cache must only be used
+ * with the Boolean algebra that produced its predicates.
+ *
+ * @param
+ * 			<P>
+ *            The type of predicates forming the Boolean algebra
+ */
+public class MintermCache<P> {
+
+	// Default bound on the number of trie nodes
+	public static final int DEFAULT_MAX_NODES = 100000;
+
+	private class Node {
+		// null if only the minterms of longer sequences are known
+		List<Pair<P, ArrayList<Integer>>> minterms;
+		IdentityHashMap<P, Node> children;
+
+		Node(List<Pair<P, ArrayList<Integer>>> minterms) {
+			this.minterms = minterms;
+		}
+	}
+
+	private final int maxNodes;
+	private Node root;
+	private int nodes;
+
+	// statistics
+	private long lookups;
+	private long hits;
+	private long partialHits;
+	private long reusedSteps;
+	private long computedSteps;
+
+	public MintermCache() {
+		this(DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * A cache that is cleared every time it grows over <code>maxNodes</code>
+	 * trie nodes
+	 */
+	public MintermCache(int maxNodes) {
+		this.maxNodes = maxNodes;
+		clear();
+	}
+
+	/**
+	 * Given a set of <code>predicates</code>, returns all the satisfiable
+	 * Boolean combinations
+	 *
+	 * @return a set of pairs (p,{i1,..,in}) where p is and ij is 0 or 1 base on
+	 *         whether pij is used positively or negatively
+	 * @throws TimeoutException
+	 */
+	public synchronized Collection<Pair<P, ArrayList<Integer>>> getMinterms(ArrayList<P> predicates,
+			BooleanAlgebra<P, ?> ba, long timeout) throws TimeoutException {
+
+		Deadline deadline = Deadline.after(timeout);
+		lookups++;
+		initRoot(ba);
+
+		// Find the longest cached prefix
+		Node node = root;
+		int k = 0;
+		while (k < predicates.size()) {
+			Node child = node.children == null ? null : node.children.get(predicates.get(k));
+			if (child == null || child.minterms == null)
+				break;
+			node = child;
+			k++;
+		}
+
+		if (k == predicates.size())
+			hits++;
+		else if (k > 0)
+			partialHits++;
+		reusedSteps += k;
+
+		// Refine the minterms with the remaining predicates
+		for (; k < predicates.size(); k++) {
+			P pred = predicates.get(k);
+			P notPred = ba.MkNot(pred);
+
+			List<Pair<P, ArrayList<Integer>>> refined = new ArrayList<Pair<P, ArrayList<Integer>>>();
+			for (Pair<P, ArrayList<Integer>> minterm : node.minterms) {
+				deadline.check();
+
+				P pos = ba.MkAnd(minterm.first, pred);
+				if (ba.IsSatisfiable(pos)) {
+					ArrayList<Integer> posList = new ArrayList<Integer>(minterm.second);
+					posList.add(1);
+					refined.add(new Pair<P, ArrayList<Integer>>(pos, posList));
+				}
+				P neg = ba.MkAnd(minterm.first, notPred);
+				if (ba.IsSatisfiable(neg)) {
+					ArrayList<Integer> negList = new ArrayList<Integer>(minterm.second);
+					negList.add(0);
+					refined.add(new Pair<P, ArrayList<Integer>>(neg, negList));
+				}
+			}
+			computedSteps++;
+
+			node = child(node, pred);
+			node.minterms = Collections.unmodifiableList(refined);
+		}
+
+		List<Pair<P, ArrayList<Integer>>> result = node.minterms;
+		if (nodes > maxNodes)
+			clearTrie(ba);
+		return result;
+	}
+
+	/**
+	 * Returns the minterms of <code>predicates</code> as computed by
+	 * <code>compute</code>, which is only called if they are not cached. Used
+	 * by the algebras computing all the minterms at once.
+	 */
+	public synchronized Collection<Pair<P, ArrayList<Integer>>> getMinterms(ArrayList<P> predicates,
+			BooleanAlgebra<P, ?> ba,
+			Function<ArrayList<P>, Collection<Pair<P, ArrayList<Integer>>>> compute) {
+
+		lookups++;
+		initRoot(ba);
+
+		Node node = root;
+		for (P pred : predicates)
+			node = child(node, pred);
+		if (node.minterms != null) {
+			hits++;
+			reusedSteps += predicates.size();
+		} else {
+			node.minterms = Collections.unmodifiableList(new ArrayList<Pair<P, ArrayList<Integer>>>(compute.apply(predicates)));
+			computedSteps += predicates.size();
+		}
+
+		List<Pair<P, ArrayList<Integer>>> result = node.minterms;
+		if (nodes > maxNodes)
+			clearTrie(ba);
+		return result;
+	}
+
+	// Returns the child of node for pred, created without minterms if missing
+	private Node child(Node node, P pred) {
+		if (node.children == null)
+			node.children = new IdentityHashMap<P, Node>();
+		Node child = node.children.get(pred);
+		if (child == null) {
+			child = new Node(null);
+			node.children.put(pred, child);
+			nodes++;
+		}
+		return child;
+	}
+
+	/**
+	 * Removes all the cached minterms and resets the statistics
+	 */
+	public synchronized void clear() {
+		root = null;
+		nodes = 0;
+		lookups = 0;
+		hits = 0;
+		partialHits = 0;
+		reusedSteps = 0;
+		computedSteps = 0;
+	}
+
+	// Drops the cached minterms but keeps the statistics
+	private void clearTrie(BooleanAlgebra<P, ?> ba) {
+		root = null;
+		nodes = 0;
+		initRoot(ba);
+	}
+
+	private void initRoot(BooleanAlgebra<P, ?> ba) {
+		if (root == null) {
+			List<Pair<P, ArrayList<Integer>>> top = new ArrayList<Pair<P, ArrayList<Integer>>>();
+			top.add(new Pair<P, ArrayList<Integer>>(ba.True(), new ArrayList<Integer>()));
+			root = new Node(Collections.unmodifiableList(top));
+		}
+	}
+
+	// ------------------------------------------------------
+	// Statistics
+	// ------------------------------------------------------
+
+	/**
+	 * @return number of queries
+	 */
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * @return number of queries answered entirely from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of queries that reused a strict, non-empty prefix
+	 */
+	public synchronized long getPartialHits() {
+		return partialHits;
+	}
+
+	/**
+	 * @return fraction of the queries answered entirely from the cache
+	 */
+	public synchronized double getHitRate() {
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * @return fraction of the refinement steps (one per predicate per query)
+	 *         that were reused from the cache
+	 */
+	public synchronized double getStepReuseRate() {
+		long steps = reusedSteps + computedSteps;
+		return steps == 0 ? 0 : (double) reusedSteps / steps;
+	}
+
+	/**
+	 * @return number of trie nodes currently cached
+	 */
+	public synchronized int size() {
+		return nodes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("MintermCache: %d lookups, %d hits, %d partial hits, %.2f step reuse rate, %d nodes",
+				lookups, hits, partialHits, getStepReuseRate(), nodes);
+	}
+}
@@ -186,9 +186,14 @@ public class CharPred extends ICharPred{
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(CharPred.class, intervals);
+		// intervals are immutable, compute the hash only once
+		if (hash == 0)
+			hash = Objects.hash(CharPred.class, intervals);
+		return hash;
 	}
 
+	private int hash;
+
 	public final ImmutableList<ImmutablePair<Character, Character>> intervals;
 
 	public static final char MIN_CHAR = Character.MIN_VALUE;
@@ -0,0 +1,156 @@
+package theory.characters;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * PackedCharPred: a set of characters represented as contiguous intervals
+ * packed in a single sorted array of bounds [lo0,hi0,lo1,hi1,...]. Intervals
+ * are disjoint and not adjacent, so two predicates denote the same set iff
+ * their arrays are equal.
+ */
+public class PackedCharPred {
+
+	public final static PackedCharPred TRUE = new PackedCharPred(CharPred.MIN_CHAR, CharPred.MAX_CHAR);
+	public final static PackedCharPred FALSE = new PackedCharPred(new char[0]);
+
+	private final char[] bounds;
+	private final int hash;
+
+	private PackedCharPred(char[] bounds) {
+		this.bounds = bounds;
+		this.hash = Arrays.hashCode(bounds);
+	}
+
+	/**
+	 * The set containing only the character <code>c</code>
+	 */
+	public PackedCharPred(char c) {
+		this(c, c);
+	}
+
+	/**
+	 * The set containing only the interval <code>[bot,top]</code> (extremes
+	 * included)
+	 */
+	public PackedCharPred(char bot, char top) {
+		this(new char[] { bot, top });
+		checkArgument(bot <= top);
+	}
+
+	/**
+	 * @return the predicate with the intervals <code>[bounds[0],bounds[1]],
+	 *         [bounds[2],bounds[3]],...</code>, which must be sorted, disjoint
+	 *         and not adjacent. The array is not copied.
+	 */
+	public static PackedCharPred ofSortedBounds(char[] bounds) {
+		checkArgument(checkNotNull(bounds).length % 2 == 0);
+		for (int i = 0; i < bounds.length; i += 2) {
+			checkArgument(bounds[i] <= bounds[i + 1]);
+			checkArgument(i == 0 || bounds[i - 1] + 1 < bounds[i]);
+		}
+		return new PackedCharPred(bounds);
+	}
+
+	/**
+	 * @return the packed version of <code>pred</code>
+	 */
+	public static PackedCharPred of(CharPred pred) {
+		char[] bounds = new char[2 * checkNotNull(pred).intervals.size()];
+		int i = 0;
+		for (ImmutablePair<Character, Character> interval : pred.intervals) {
+			bounds[i++] = interval.left;
+			bounds[i++] = interval.right;
+		}
+		return new PackedCharPred(bounds);
+	}
+
+	/**
+	 * @return the same set of characters as a <code>CharPred</code>
+	 */
+	public CharPred toCharPred() {
+		ImmutableList.Builder<ImmutablePair<Character, Character>> intervals = ImmutableList.builder();
+		for (int i = 0; i < bounds.length; i += 2)
+			intervals.add(ImmutablePair.of(bounds[i], bounds[i + 1]));
+		return new CharPred(intervals.build());
+	}
+
+	/**
+	 * @return number of intervals
+	 */
+	public int intervalCount() {
+		return bounds.length / 2;
+	}
+
+	/**
+	 * @return lower bound of the <code>i</code>-th interval
+	 */
+	public char lo(int i) {
+		return bounds[2 * i];
+	}
+
+	/**
+	 * @return upper bound of the <code>i</code>-th interval
+	 */
+	public char hi(int i) {
+		return bounds[2 * i + 1];
+	}
+
+	public boolean isEmpty() {
+		return bounds.length == 0;
+	}
+
+	/**
+	 * @return true iff <code>c</code> belongs to one of the intervals
+	 */
+	public boolean isSatisfiedBy(char c) {
+		// binary search for the last interval starting at or before c
+		int lo = 0;
+		int hi = bounds.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bounds[2 * mid] <= c)
+				lo = mid + 1;
+			else
+				hi = mid - 1;
+		}
+		return hi >= 0 && c <= bounds[2 * hi + 1];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		for (int i = 0; i < bounds.length; i += 2) {
+			sb.append(CharPred.printChar(bounds[i]));
+			if (bounds[i] != bounds[i + 1]) {
+				sb.append("-");
+				sb.append(CharPred.printChar(bounds[i + 1]));
+			}
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj instanceof PackedCharPred) {
+			PackedCharPred other = (PackedCharPred) obj;
+			return hash == other.hash && Arrays.equals(bounds, other.bounds);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,244 @@
+package theory.intervals;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebra;
+import theory.characters.CharPred;
+import theory.characters.PackedCharPred;
+import utilities.Deadline;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
+import utilities.Pair;
+
+/**
+ * PackedCharIntervalSolver: an interval based solver for the theory of
+ * characters where predicates are packed arrays of interval bounds. Boolean
+ * operations are single merges of the sorted bounds.
+ */
+public class PackedCharIntervalSolver extends BooleanAlgebra<PackedCharPred, Character> {
+
+	@Override
+	public PackedCharPred MkAtom(Character s) {
+		return new PackedCharPred(checkNotNull(s));
+	}
+
+	@Override
+	public PackedCharPred MkNot(PackedCharPred p) {
+		int n = checkNotNull(p).intervalCount();
+		if (n == 0)
+			return PackedCharPred.TRUE;
+
+		char[] res = new char[2 * (n + 1)];
+		int k = 0;
+		if (p.lo(0) > CharPred.MIN_CHAR) {
+			res[k++] = CharPred.MIN_CHAR;
+			res[k++] = (char) (p.lo(0) - 1);
+		}
+		for (int i = 1; i < n; i++) {
+			res[k++] = (char) (p.hi(i - 1) + 1);
+			res[k++] = (char) (p.lo(i) - 1);
+		}
+		if (p.hi(n - 1) < CharPred.MAX_CHAR) {
+			res[k++] = (char) (p.hi(n - 1) + 1);
+			res[k++] = CharPred.MAX_CHAR;
+		}
+		return PackedCharPred.ofSortedBounds(Arrays.copyOf(res, k));
+	}
+
+	@Override
+	public PackedCharPred MkOr(Collection<PackedCharPred> pset) {
+		PackedCharPred or = PackedCharPred.FALSE;
+		for (PackedCharPred p : pset)
+			or = MkOr(or, p);
+		return or;
+	}
+
+	@Override
+	public PackedCharPred MkOr(PackedCharPred p1, PackedCharPred p2) {
+		int n1 = checkNotNull(p1).intervalCount();
+		int n2 = checkNotNull(p2).intervalCount();
+		if (n1 == 0)
+			return p2;
+		if (n2 == 0)
+			return p1;
+
+		char[] res = new char[2 * (n1 + n2)];
+		int k = 0;
+		int i = 0, j = 0;
+		while (i < n1 || j < n2) {
+			// pick the interval starting first
+			char lo, hi;
+			if (j == n2 || (i < n1 && p1.lo(i) <= p2.lo(j))) {
+				lo = p1.lo(i);
+				hi = p1.hi(i++);
+			} else {
+				lo = p2.lo(j);
+				hi = p2.hi(j++);
+			}
+			// merge it with the last interval if they overlap or touch
+			if (k > 0 && lo <= res[k - 1] + 1) {
+				if (hi > res[k - 1])
+					res[k - 1] = hi;
+			} else {
+				res[k++] = lo;
+				res[k++] = hi;
+			}
+		}
+		return PackedCharPred.ofSortedBounds(Arrays.copyOf(res, k));
+	}
+
+	@Override
+	public PackedCharPred MkAnd(Collection<PackedCharPred> pset) {
+		PackedCharPred and = PackedCharPred.TRUE;
+		for (PackedCharPred p : pset)
+			and = MkAnd(and, p);
+		return and;
+	}
+
+	@Override
+	public PackedCharPred MkAnd(PackedCharPred p1, PackedCharPred p2) {
+		int n1 = checkNotNull(p1).intervalCount();
+		int n2 = checkNotNull(p2).intervalCount();
+		if (n1 == 0 || n2 == 0)
+			return PackedCharPred.FALSE;
+
+		char[] res = new char[2 * (n1 + n2)];
+		int k = 0;
+		for (int i = 0, j = 0; i < n1 && j < n2;) {
+			char lo = (char) Math.max(p1.lo(i), p2.lo(j));
+			char hi = (char) Math.min(p1.hi(i), p2.hi(j));
+			if (lo <= hi) {
+				res[k++] = lo;
+				res[k++] = hi;
+			}
+			if (p1.hi(i) == hi)
+				i++;
+			else
+				j++;
+		}
+		return PackedCharPred.ofSortedBounds(Arrays.copyOf(res, k));
+	}
+
+	@Override
+	public PackedCharPred True() {
+		return PackedCharPred.TRUE;
+	}
+
+	@Override
+	public PackedCharPred False() {
+		return PackedCharPred.FALSE;
+	}
+
+	@Override
+	public boolean AreEquivalent(PackedCharPred p1, PackedCharPred p2) {
+		// predicates are normalized
+		return checkNotNull(p1).equals(checkNotNull(p2));
+	}
+
+	@Override
+	public boolean IsSatisfiable(PackedCharPred p) {
+		return !checkNotNull(p).isEmpty();
+	}
+
+	@Override
+	public boolean HasModel(PackedCharPred p, Character el) {
+		return checkNotNull(p).isSatisfiedBy(checkNotNull(el));
+	}
+
+	@Override
+	public boolean HasModel(PackedCharPred p, Character el1, Character el2) {
+		throw new UnsupportedOperationException("Not supported yet.");
+	}
+
+	@Override
+	public Character generateWitness(PackedCharPred p) {
+		if (checkNotNull(p).isEmpty())
+			return null;
+		return p.lo(0);
+	}
+
+	@Override
+	public Pair<Character, Character> generateWitnesses(PackedCharPred p) {
+		throw new UnsupportedOperationException("Not supported yet.");
+	}
+
+	/**
+	 * Computes the minterms by sweeping the sorted interval endpoints of the
+	 * predicates
+	 */
+	@Override
+	public Collection<Pair<PackedCharPred, ArrayList<Integer>>> GetMinterms(ArrayList<PackedCharPred> predicates)
+			throws TimeoutException {
+		Deadline.current().check();
+		return sweepMinterms(predicates);
+	}
+
+	@Override
+	public Collection<Pair<PackedCharPred, ArrayList<Integer>>> GetMinterms(ArrayList<PackedCharPred> predicates,
+			long timeout) throws TimeoutException {
+		Deadline.current().check();
+		return sweepMinterms(predicates);
+	}
+
+	private Collection<Pair<PackedCharPred, ArrayList<Integer>>> sweepMinterms(ArrayList<PackedCharPred> predicates) {
+		int n = predicates.size();
+
+		// An event at point c toggles predicate i, encoded as c * n + i
+		int events = 0;
+		for (PackedCharPred p : predicates)
+			events += 2 * checkNotNull(p).intervalCount();
+		long[] points = new long[events];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			PackedCharPred p = predicates.get(i);
+			for (int j = 0; j < p.intervalCount(); j++) {
+				points[k++] = (long) p.lo(j) * n + i;
+				points[k++] = ((long) p.hi(j) + 1) * n + i;
+			}
+		}
+		Arrays.sort(points);
+
+		// Group the segments by signature, segments of a signature are found
+		// in increasing order and are never adjacent
+		Map<BitSet, StringBuilder> segments = new LinkedHashMap<BitSet, StringBuilder>();
+		BitSet signature = new BitSet(n);
+		int segmentStart = CharPred.MIN_CHAR;
+		k = 0;
+		while (segmentStart <= CharPred.MAX_CHAR) {
+			while (k < points.length && points[k] / n == segmentStart) {
+				signature.flip((int) (points[k] % n));
+				k++;
+			}
+			int segmentEnd = k < points.length ? (int) (points[k] / n) - 1 : CharPred.MAX_CHAR;
+
+			StringBuilder bounds = segments.get(signature);
+			if (bounds == null) {
+				bounds = new StringBuilder();
+				segments.put((BitSet) signature.clone(), bounds);
+			}
+			bounds.append((char) segmentStart).append((char) segmentEnd);
+			segmentStart = segmentEnd + 1;
+		}
+
+		Collection<Pair<PackedCharPred, ArrayList<Integer>>> minterms = new ArrayList<Pair<PackedCharPred, ArrayList<Integer>>>();
+		for (Map.Entry<BitSet, StringBuilder> entry : segments.entrySet()) {
+			ArrayList<Integer> bits = new ArrayList<Integer>(n);
+			for (int i = 0; i < n; i++)
+				bits.add(entry.getKey().get(i) ? 1 : 0);
+			char[] bounds = new char[entry.getValue().length()];
+			entry.getValue().getChars(0, bounds.length, bounds, 0);
+			minterms.add(new Pair<PackedCharPred, ArrayList<Integer>>(PackedCharPred.ofSortedBounds(bounds), bits));
+		}
+		Metrics.current().add(Counter.MINTERMS, minterms.size());
+		return minterms;
+	}
+}
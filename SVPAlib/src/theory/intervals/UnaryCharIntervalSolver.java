@@ -10,16 +10,29 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.sat4j.specs.TimeoutException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import theory.BooleanAlgebraSubst;
+import theory.MintermCache;
 import theory.characters.*;
+import utilities.Deadline;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
 import utilities.Pair;
 
 /**
@@ -27,8 +40,132 @@ import utilities.Pair;
  */
 public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharFunc, Character> {
 
+	// Maximum number of memoized results for each binary operation
+	private static final int MEMO_SIZE = 1 << 16;
+
+	// Pair of canonical predicates compared by reference
+	private static final class CanonicalPair {
+		final CharPred first;
+		final CharPred second;
+
+		CanonicalPair(CharPred p1, CharPred p2) {
+			// MkAnd and MkOr are commutative
+			if (System.identityHashCode(p1) <= System.identityHashCode(p2)) {
+				first = p1;
+				second = p2;
+			} else {
+				first = p2;
+				second = p1;
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CanonicalPair))
+				return false;
+			CanonicalPair other = (CanonicalPair) obj;
+			return first == other.first && second == other.second;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(first) + System.identityHashCode(second);
+		}
+	}
+
+	private final boolean interning;
+	private final Interner<CharPred> interner;
+	private final Cache<CharPred, CharPred> notMemo;
+	private final Cache<CanonicalPair, CharPred> andMemo;
+	private final Cache<CanonicalPair, CharPred> orMemo;
+
+	public UnaryCharIntervalSolver() {
+		this(false);
+	}
+
+	/**
+	 * If <code>interning</code> is true, structurally equal predicates built
+	 * by the solver share one canonical instance (predicates that are no
+	 * longer used are reclaimed) and the results of MkAnd, MkOr and MkNot are
+	 * memoized on the canonical instances. Canonical predicates are shared, so
+	 * they must not be marked with <code>setAsReturn</code>.
+	 */
+	public UnaryCharIntervalSolver(boolean interning) {
+		this.interning = interning;
+		if (interning) {
+			interner = Interners.newWeakInterner();
+			interner.intern(StdCharPred.TRUE);
+			interner.intern(StdCharPred.FALSE);
+			notMemo = CacheBuilder.newBuilder().weakKeys().weakValues().build();
+			andMemo = CacheBuilder.newBuilder().maximumSize(MEMO_SIZE).build();
+			orMemo = CacheBuilder.newBuilder().maximumSize(MEMO_SIZE).build();
+		} else {
+			interner = null;
+			notMemo = null;
+			andMemo = null;
+			orMemo = null;
+		}
+	}
+
+	/**
+	 * @return the canonical instance equal to <code>u</code>, <code>u</code>
+	 *         itself if interning is disabled
+	 */
+	public CharPred intern(CharPred u) {
+		return interning ? interner.intern(checkNotNull(u)) : u;
+	}
+
+	/**
+	 * @return true iff predicates are interned
+	 */
+	public boolean isInterning() {
+		return interning;
+	}
+
 	@Override
 	public CharPred MkNot(CharPred u) {
+		if (!interning)
+			return mkNot(u);
+
+		CharPred cu = intern(u);
+		CharPred res = notMemo.getIfPresent(cu);
+		if (res == null) {
+			res = intern(mkNot(cu));
+			notMemo.put(cu, res);
+		}
+		return res;
+	}
+
+	@Override
+	public CharPred MkOr(CharPred u1, CharPred u2) {
+		if (!interning)
+			return mkOr(u1, u2);
+
+		CanonicalPair key = new CanonicalPair(intern(u1), intern(u2));
+		CharPred res = orMemo.getIfPresent(key);
+		if (res == null) {
+			res = intern(mkOr(key.first, key.second));
+			orMemo.put(key, res);
+		}
+		return res;
+	}
+
+	@Override
+	public CharPred MkAnd(CharPred u1, CharPred u2) {
+		if (!interning)
+			return mkAnd(u1, u2);
+
+		CanonicalPair key = new CanonicalPair(intern(u1), intern(u2));
+		CharPred res = andMemo.getIfPresent(key);
+		if (res == null) {
+			res = intern(mkAnd(key.first, key.second));
+			andMemo.put(key, res);
+		}
+		return res;
+	}
+
+	// computes the complement without interning
+	private CharPred mkNot(CharPred u) {
 		List<ImmutablePair<Character,Character>> newIntervals =
 				new ArrayList<ImmutablePair<Character, Character>>();
 
@@ -70,9 +207,45 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 		return or;
 	}
 
-	@Override
-	public CharPred MkOr(CharPred u1, CharPred u2) {
-		return MkNot(MkAnd(MkNot(u1), MkNot(u2)));
+	// computes the disjunction without interning
+	private CharPred mkOr(CharPred u1, CharPred u2) {
+		if(checkNotNull(u1).intervals.isEmpty()) {
+			return checkNotNull(u2);
+		}
+		if(checkNotNull(u2).intervals.isEmpty()) {
+			return u1;
+		}
+
+		// merge the two sorted lists of intervals, coalescing intervals that
+		// overlap or touch
+		List<ImmutablePair<Character,Character>> newIntervals =
+				new ArrayList<ImmutablePair<Character, Character>>();
+
+		char lo = 0, hi = 0;
+		boolean open = false;
+		for (int i = 0, j = 0; i < u1.intervals.size() || j < u2.intervals.size(); ) {
+			ImmutablePair<Character, Character> cur;
+			if (j == u2.intervals.size() ||
+					(i < u1.intervals.size() && u1.intervals.get(i).left <= u2.intervals.get(j).left)) {
+				cur = u1.intervals.get(i++);
+			} else {
+				cur = u2.intervals.get(j++);
+			}
+
+			if (open && cur.left <= hi + 1) {
+				hi = (char)Math.max(hi, cur.right);
+			} else {
+				if (open) {
+					newIntervals.add(ImmutablePair.of(lo, hi));
+				}
+				lo = cur.left;
+				hi = cur.right;
+				open = true;
+			}
+		}
+		newIntervals.add(ImmutablePair.of(lo, hi));
+
+		return new CharPred(ImmutableList.copyOf(newIntervals));
 	}
 
 	@Override
@@ -84,8 +257,8 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 		return and;
 	}
 
-	@Override
-	public CharPred MkAnd(CharPred u1, CharPred u2) {
+	// computes the conjunction without interning
+	private CharPred mkAnd(CharPred u1, CharPred u2) {
 		if(checkNotNull(u1).intervals.isEmpty() || checkNotNull(u2).intervals.isEmpty()) {
 			return False();
 		}
@@ -128,6 +301,11 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 		checkNotNull(u1);
 		checkNotNull(u2);
 
+		// interval lists are normalized, so canonical instances are equivalent
+		// iff they are the same
+		if (interning)
+			return intern(u1) == intern(u2);
+
 		boolean nonEquivalent = IsSatisfiable(MkAnd(u1, MkNot(u2))) ||
 				IsSatisfiable(MkAnd(MkNot(u1),u2));
 		return !nonEquivalent;
@@ -222,6 +400,83 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 		}
 	}
 
+	/**
+	 * Computes the minterms by sweeping the sorted interval endpoints of the
+	 * predicates: between two consecutive endpoints every predicate is either
+	 * true or false, and segments with the same signature form a minterm.
+	 * When a cache is set with <code>setMintermCache</code>, the minterms of
+	 * the whole list of predicates are stored in it.
+	 */
+	@Override
+	public Collection<Pair<CharPred, ArrayList<Integer>>> GetMinterms(ArrayList<CharPred> predicates)
+			throws TimeoutException {
+		return GetMinterms(predicates, Long.MAX_VALUE);
+	}
+
+	@Override
+	public Collection<Pair<CharPred, ArrayList<Integer>>> GetMinterms(ArrayList<CharPred> predicates,
+			long timeout) throws TimeoutException {
+		Deadline.current().check();
+		MintermCache<CharPred> cache = getMintermCache();
+		Collection<Pair<CharPred, ArrayList<Integer>>> minterms;
+		if (cache == null)
+			minterms = sweepMinterms(predicates);
+		else
+			minterms = cache.getMinterms(predicates, this, this::sweepMinterms);
+		Metrics.current().add(Counter.MINTERMS, minterms.size());
+		return minterms;
+	}
+
+	private Collection<Pair<CharPred, ArrayList<Integer>>> sweepMinterms(ArrayList<CharPred> predicates) {
+		int n = predicates.size();
+
+		// An event at point c toggles predicate i, encoded as c * n + i so
+		// that sorting the events sorts them by point
+		int events = 0;
+		for (CharPred p : predicates)
+			events += 2 * checkNotNull(p).intervals.size();
+		long[] points = new long[events];
+		int k = 0;
+		for (int i = 0; i < n; i++)
+			for (ImmutablePair<Character, Character> interval : predicates.get(i).intervals) {
+				points[k++] = (long) interval.left * n + i;
+				points[k++] = ((long) interval.right + 1) * n + i;
+			}
+		Arrays.sort(points);
+
+		// Group the segments by signature
+		Map<BitSet, ImmutableList.Builder<ImmutablePair<Character, Character>>> segments =
+				new LinkedHashMap<BitSet, ImmutableList.Builder<ImmutablePair<Character, Character>>>();
+		BitSet signature = new BitSet(n);
+		int segmentStart = CharPred.MIN_CHAR;
+		k = 0;
+		while (segmentStart <= CharPred.MAX_CHAR) {
+			// apply all the events at segmentStart
+			while (k < points.length && points[k] / n == segmentStart) {
+				signature.flip((int) (points[k] % n));
+				k++;
+			}
+			int segmentEnd = k < points.length ? (int) (points[k] / n) - 1 : CharPred.MAX_CHAR;
+
+			ImmutableList.Builder<ImmutablePair<Character, Character>> intervals = segments.get(signature);
+			if (intervals == null) {
+				intervals = ImmutableList.builder();
+				segments.put((BitSet) signature.clone(), intervals);
+			}
+			intervals.add(ImmutablePair.of((char) segmentStart, (char) segmentEnd));
+			segmentStart = segmentEnd + 1;
+		}
+
+		Collection<Pair<CharPred, ArrayList<Integer>>> minterms = new ArrayList<Pair<CharPred, ArrayList<Integer>>>();
+		for (Map.Entry<BitSet, ImmutableList.Builder<ImmutablePair<Character, Character>>> entry : segments.entrySet()) {
+			ArrayList<Integer> bits = new ArrayList<Integer>(n);
+			for (int i = 0; i < n; i++)
+				bits.add(entry.getKey().get(i) ? 1 : 0);
+			minterms.add(new Pair<CharPred, ArrayList<Integer>>(intern(new CharPred(entry.getValue().build())), bits));
+		}
+		return minterms;
+	}
+
 	/**
 	 * returns a string of a list of CharPred
 	 * @param charPreds
@@ -250,7 +505,7 @@ public class UnaryCharIntervalSolver extends BooleanAlgebraSubst<CharPred, CharF
 
 	@Override
 	public CharPred MkAtom(Character s) {
-		return new CharPred(s);
+		return intern(new CharPred(s));
 	}
 
 }
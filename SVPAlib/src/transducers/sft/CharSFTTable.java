@@ -0,0 +1,337 @@
+package transducers.sft;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.sat4j.specs.TimeoutException;
+
+import theory.characters.CharConstant;
+import theory.characters.CharFunc;
+import theory.characters.CharOffset;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+import utilities.Deadline;
+
+/**
+ * A deterministic SFT over characters compiled into tables. The alphabet is
+ * split into the classes of characters that no guard distinguishes, and a
+ * table maps every state and class to the move taken. The outputs of a move
+ * are primitive operations, a constant or an offset of the input character,
+ * appended straight into a <code>char[]</code> buffer.
+ */
+public final class CharSFTTable {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final int stateCount;
+	private final int classCount;
+	// class of every character
+	private final char[] classOf;
+	// move taken from state q on class k at position q * classCount + k, -1
+	// if none
+	private final int[] moveOf;
+
+	private final int[] targets;
+	// outputs of move m are the operations opBegin[m] to opBegin[m + 1] - 1,
+	// a constant character or an offset added to the input character
+	private final int[] opBegin;
+	private final boolean[] opIsConstant;
+	private final int[] opArg;
+	private final int maxOps;
+
+	// tail written when accepting in a state, null for non-final states
+	private final char[][] tails;
+	private final int maxTail;
+
+	private CharSFTTable(int stateCount, int classCount, char[] classOf, int[] moveOf, int[] targets, int[] opBegin,
+			boolean[] opIsConstant, int[] opArg, char[][] tails) {
+		this.stateCount = stateCount;
+		this.classCount = classCount;
+		this.classOf = classOf;
+		this.moveOf = moveOf;
+		this.targets = targets;
+		this.opBegin = opBegin;
+		this.opIsConstant = opIsConstant;
+		this.opArg = opArg;
+		this.tails = tails;
+
+		int ops = 0;
+		for (int m = 0; m < targets.length; m++)
+			ops = Math.max(ops, opBegin[m + 1] - opBegin[m]);
+		maxOps = ops;
+		int tail = 0;
+		for (char[] t : tails)
+			if (t != null)
+				tail = Math.max(tail, t.length);
+		maxTail = tail;
+	}
+
+	/**
+	 * @return the table of <code>sft</code>, null if its epsilon-free version
+	 *         is not deterministic or has output functions other than
+	 *         {@link CharConstant} and {@link CharOffset}
+	 * @throws TimeoutException
+	 */
+	public static CharSFTTable compile(SFT<CharPred, CharFunc, Character> sft, UnaryCharIntervalSolver ba)
+			throws TimeoutException {
+		return compileEpsilonFree(sft.removeEpsilonMoves(ba));
+	}
+
+	static CharSFTTable compileEpsilonFree(SFT<CharPred, CharFunc, Character> sft) {
+		if (!sft.isDeterministic())
+			return null;
+
+		// dense ids, the initial state is 0
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		List<Integer> states = new ArrayList<Integer>();
+		ids.put(sft.getInitialState(), 0);
+		states.add(sft.getInitialState());
+		for (Integer state : sft.getStates())
+			if (!ids.containsKey(state)) {
+				ids.put(state, states.size());
+				states.add(state);
+			}
+		int stateCount = states.size();
+
+		// classes start at the bounds of the intervals of the guards
+		boolean[] isStart = new boolean[CharPred.MAX_CHAR + 1];
+		isStart[CharPred.MIN_CHAR] = true;
+		for (SFTInputMove<CharPred, CharFunc, Character> move : sft.getInputMovesFrom(states))
+			for (ImmutablePair<Character, Character> interval : move.guard.intervals) {
+				isStart[interval.left] = true;
+				if (interval.right < CharPred.MAX_CHAR)
+					isStart[interval.right + 1] = true;
+			}
+		char[] classOf = new char[CharPred.MAX_CHAR + 1];
+		List<Character> representatives = new ArrayList<Character>();
+		for (int c = CharPred.MIN_CHAR; c <= CharPred.MAX_CHAR; c++) {
+			if (isStart[c])
+				representatives.add((char) c);
+			classOf[c] = (char) (representatives.size() - 1);
+		}
+		int classCount = representatives.size();
+
+		List<SFTInputMove<CharPred, CharFunc, Character>> moves = new ArrayList<SFTInputMove<CharPred, CharFunc, Character>>();
+		int[] moveOf = new int[stateCount * classCount];
+		for (int i = 0; i < moveOf.length; i++)
+			moveOf[i] = -1;
+		char[][] tails = new char[stateCount][];
+		for (int q = 0; q < stateCount; q++) {
+			Integer state = states.get(q);
+			for (SFTInputMove<CharPred, CharFunc, Character> move : sft.getInputMovesFrom(state)) {
+				for (int k = 0; k < classCount; k++)
+					if (move.guard.isSatisfiedBy(representatives.get(k)))
+						moveOf[q * classCount + k] = moves.size();
+				moves.add(move);
+			}
+			if (sft.isFinalState(state)) {
+				Set<List<Character>> stateTails = sft.getFinalStatesAndTails().get(state);
+				List<Character> tail = stateTails.isEmpty() ? new ArrayList<Character>()
+						: stateTails.iterator().next();
+				tails[q] = new char[tail.size()];
+				for (int i = 0; i < tail.size(); i++)
+					tails[q][i] = tail.get(i);
+			}
+		}
+
+		int[] targets = new int[moves.size()];
+		int[] opBegin = new int[moves.size() + 1];
+		int opCount = 0;
+		for (int m = 0; m < moves.size(); m++) {
+			targets[m] = ids.get(moves.get(m).to);
+			opBegin[m] = opCount;
+			opCount += moves.get(m).outputFunctions.size();
+		}
+		opBegin[moves.size()] = opCount;
+
+		boolean[] opIsConstant = new boolean[opCount];
+		int[] opArg = new int[opCount];
+		int k = 0;
+		for (SFTInputMove<CharPred, CharFunc, Character> move : moves)
+			for (CharFunc f : move.outputFunctions) {
+				if (f instanceof CharConstant) {
+					opIsConstant[k] = true;
+					opArg[k] = ((CharConstant) f).c;
+				} else if (f instanceof CharOffset)
+					opArg[k] = (int) ((CharOffset) f).increment;
+				else
+					return null;
+				k++;
+			}
+
+		return new CharSFTTable(stateCount, classCount, classOf, moveOf, targets, opBegin, opIsConstant, opArg,
+				tails);
+	}
+
+	/**
+	 * @return the output on <code>input</code>, null if it is not accepted
+	 * @throws TimeoutException
+	 */
+	public String outputOn(CharSequence input) throws TimeoutException {
+		Run run = start();
+		char[] chars = input.toString().toCharArray();
+		if (!run.feed(chars, 0, chars.length) || !run.finish())
+			return null;
+		return new String(run.getBuffer(), 0, run.getLength());
+	}
+
+	/**
+	 * Reads all of <code>in</code> in chunks and writes the output to
+	 * <code>out</code> while reading. Reading stops as soon as no move applies.
+	 * Neither stream is closed.
+	 *
+	 * @return true iff the input is accepted
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public boolean transduce(Readable in, Writer out) throws IOException, TimeoutException {
+		Run run = start();
+		CharBuffer input = CharBuffer.allocate(CHUNK_SIZE);
+		while (in.read(input) >= 0) {
+			input.flip();
+			boolean alive = run.feed(input.array(), input.position(), input.remaining());
+			input.clear();
+			out.write(run.getBuffer(), 0, run.getLength());
+			run.clear();
+			if (!alive)
+				return false;
+		}
+		boolean accepted = run.finish();
+		out.write(run.getBuffer(), 0, run.getLength());
+		return accepted;
+	}
+
+	/**
+	 * @return a new run from the initial state
+	 */
+	public Run start() {
+		return new Run();
+	}
+
+	/**
+	 * @return number of states
+	 */
+	public int stateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * @return number of classes of characters
+	 */
+	public int classCount() {
+		return classCount;
+	}
+
+	/**
+	 * A run over an input fed in chunks. The output is appended to a buffer
+	 * that grows as needed until it is cleared.
+	 */
+	public final class Run {
+
+		private final Deadline deadline = Deadline.current();
+
+		// -1 once no move applied
+		private int state;
+		private char[] buffer = new char[CHUNK_SIZE];
+		private int length;
+
+		private Run() {
+			state = 0;
+		}
+
+		/**
+		 * Consumes <code>len</code> characters of <code>input</code> starting
+		 * at <code>off</code>
+		 *
+		 * @return false iff no move applies to one of the characters, in which
+		 *         case the input is rejected whatever follows
+		 * @throws TimeoutException
+		 */
+		public boolean feed(char[] input, int off, int len) throws TimeoutException {
+			deadline.check();
+			if (state < 0)
+				return false;
+			ensureCapacity((long) len * maxOps);
+
+			final char[] out = buffer;
+			int n = length;
+			int q = state;
+			for (int i = off, end = off + len; i < end; i++) {
+				char c = input[i];
+				int m = moveOf[q * classCount + classOf[c]];
+				if (m < 0) {
+					length = n;
+					state = -1;
+					return false;
+				}
+				for (int k = opBegin[m], kEnd = opBegin[m + 1]; k < kEnd; k++) {
+					if (opIsConstant[k])
+						out[n++] = (char) opArg[k];
+					else {
+						int v = c + opArg[k];
+						out[n++] = (char) (v < CharPred.MIN_CHAR ? CharPred.MIN_CHAR
+								: v > CharPred.MAX_CHAR ? CharPred.MAX_CHAR : v);
+					}
+				}
+				q = targets[m];
+			}
+			length = n;
+			state = q;
+			return true;
+		}
+
+		/**
+		 * Ends the input, appending the tail of the final state
+		 *
+		 * @return true iff the input is accepted
+		 */
+		public boolean finish() {
+			if (state < 0 || tails[state] == null)
+				return false;
+			ensureCapacity(maxTail);
+			System.arraycopy(tails[state], 0, buffer, length, tails[state].length);
+			length += tails[state].length;
+			return true;
+		}
+
+		private void ensureCapacity(long extra) {
+			long needed = length + extra;
+			if (needed > buffer.length) {
+				if (needed > Integer.MAX_VALUE - 8)
+					throw new OutOfMemoryError("Output buffer too large");
+				char[] larger = new char[(int) Math.max(needed, Math.min(2L * buffer.length, Integer.MAX_VALUE - 8))];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+		}
+
+		/**
+		 * @return the buffer holding the output, valid up to
+		 *         {@link #getLength()}
+		 */
+		public char[] getBuffer() {
+			return buffer;
+		}
+
+		/**
+		 * @return number of output characters in the buffer
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Discards the output in the buffer
+		 */
+		public void clear() {
+			length = 0;
+		}
+	}
+}
@@ -16,7 +16,6 @@ import java.util.HashSet;
 import java.util.Collection;
 
 import org.sat4j.specs.TimeoutException;
-import static com.google.common.base.Preconditions.checkNotNull;
 
 import automata.Automaton;
 import automata.Move;
@@ -25,6 +24,7 @@ import automata.sfa.SFAMove;
 import automata.sfa.SFAEpsilon;
 import automata.sfa.SFAInputMove;
 import theory.BooleanAlgebraSubst;
+import utilities.Deadline;
 import utilities.Pair;
 
 
@@ -164,58 +164,9 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 	public static <P, F, S> List<S> outputOn(SFT<P, F, S> sftWithEps, List<S> input,
 												 BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
 
-		// codes for nondeterministic but single-valued symbolic finite transducers
-		List<List<S>> outputs = new ArrayList<List<S>>();
-
-		SFT<P, F, S> sft = sftWithEps.removeEpsilonMoves(ba);
-		// guarantee that there are no epsilon transitions for now
-
-		backtrack(outputs, new ArrayList<S>(), sft, sft.getInitialState(), input, 0, ba);
-
-		// if you want the method to be adapt to non single-valued symbolic finite transducers, you could just return
-		// the whole outputs.
-		if (outputs.size() != 0)
-			return outputs.get(0);
-		else
-			return null;
-	}
-
-	// use backtrack method to get all possible outputs
-	private static <P, F, S> void backtrack(List<List<S>> outputs, List<S> tempList, SFT<P, F, S> sft,
-											Integer currentState, List<S> input, int position,
-											BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
-
-		if (position > input.size())
-			return;
-		else if (position == input.size()) {
-			if (sft.isFinalState(currentState)) {
-				if (sft.getFinalStatesAndTails().get(currentState).size() == 0) {
-					outputs.add(new ArrayList<S>(tempList));
-				} else {
-					for (List<S> tail: sft.getFinalStatesAndTails().get(currentState)) {
-						List<S> finalResult = new ArrayList<S>(tempList);
-						finalResult.addAll(tail);
-						outputs.add(new ArrayList<S>(finalResult));
-					}
-				}
-			}
-			return;
-		} else {
-			Collection<SFTInputMove<P, F, S>> transitions = sft.getInputMovesFrom(currentState);
-			boolean canMove = false;
-			for (SFTInputMove<P, F, S> transition: transitions) {
-				if (ba.HasModel(transition.guard, input.get(position))) {
-					for (F outputFunc: transition.outputFunctions)
-						tempList.add(ba.MkSubstFuncConst(outputFunc, input.get(position)));
-					backtrack(outputs, tempList, sft, transition.to, input, position + 1, ba);
-					for (int i = 0; i < transition.outputFunctions.size(); i++)
-						tempList.remove(tempList.size() - 1);
-					canMove = true;
-				}
-			}
-			if (!canMove)
-				return;
-		}
+		// codes for nondeterministic but single-valued symbolic finite transducers, the runner returns the output
+		// of the first accepting path that the original backtracking search found
+		return new SFTRunner<P, F, S>(sftWithEps, ba).outputOn(input);
 	}
 
 	/**
@@ -255,8 +206,14 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 		reached.put(p, initialState);
 		toVisit.push(p);
 
+		// chains of moves of sft2 shared by the whole composition
+		Map<Pair<Integer, Integer>, List<ChainStep<P, F, S>>> chainCache = new HashMap<Pair<Integer, Integer>, List<ChainStep<P, F, S>>>();
+
+		Deadline deadline = Deadline.current();
 		// depth first search
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, Integer> currState = toVisit.pop();
 			int currStateId = reached.get(currState);
 
@@ -270,28 +227,23 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 						finalStatesAndTails.put(currStateId, sft2FinalStatesAndTails.get(currState.second));
 				} else { // currState.first is a final state and it has non-empty tails
 					for (List<S> tail: sft1FinalStatesAndTails.get(currState.first)) {
-						List<List<SFTMove<P, F, S>>> chains = sft2.getPossibleTransitionChains(currState.second, tail.size());
-						for (List<SFTMove<P, F, S>> chain : chains) {
-							// according to the algorithm of method getPossibleTransitionChains, there is at least one
-							// SFTMove in a chain.
-							SFTInputMove<P, F, S> t2 = (SFTInputMove<P, F, S>) chain.get(0);
-							P intersGuard = ba.MkSubstFuncPred(ba.MkFuncConst(tail.get(0)), t2.guard);
-							List<S> output = new LinkedList<S>();
-							for (F t2OutputFunction : t2.outputFunctions)
-								output.add(ba.MkSubstFuncConst(t2OutputFunction, tail.get(0)));
-							// initialize the composed guard.
+						List<F> tailFunctions = new ArrayList<F>();
+						for (S c : tail)
+							tailFunctions.add(ba.MkFuncConst(c));
+						List<Pair<P, List<SFTInputMove<P, F, S>>>> chains = new ArrayList<Pair<P, List<SFTInputMove<P, F, S>>>>();
+						satisfiableChains(chainSteps(sft2, currState.second, tail.size(), chainCache), tailFunctions, 0,
+								null, new LinkedList<SFTInputMove<P, F, S>>(), chains, ba, deadline);
+						for (Pair<P, List<SFTInputMove<P, F, S>>> chain : chains) {
 							// consider the tail p --[c1 c2]-->| in sft1 and the transition
 							// q --psi/[g]--> q' --gamma/[h] --> q'' --[c3 c4]-->| in sft2, where q'' is a final state
 							// the composed tail should be
 							// (p, q) --[g(c1), h(c2) c3 c4]-->| if psi is satisfied by c1 and gamma is satisfied by c2
-							for (int i = 1; i < chain.size(); i++) {
-								t2 = (SFTInputMove<P, F, S>) chain.get(i);
-								intersGuard = ba.MkAnd(intersGuard, ba.MkSubstFuncPred(ba.MkFuncConst(tail.get(i)), t2.guard));
-								for (F t2OutputFunction : t2.outputFunctions)
+							List<S> output = new LinkedList<S>();
+							for (int i = 0; i < chain.second.size(); i++)
+								for (F t2OutputFunction : chain.second.get(i).outputFunctions)
 									output.add(ba.MkSubstFuncConst(t2OutputFunction, tail.get(i)));
-							}
-							// now t2 is the last transition in the chain
-							if (ba.IsSatisfiable(intersGuard) && sft2.isFinalState(t2.to)) {
+							SFTInputMove<P, F, S> t2 = chain.second.get(chain.second.size() - 1);
+							if (sft2.isFinalState(t2.to)) {
 								Set<List<S>> tails = new HashSet<List<S>>();
 								if (sft2FinalStatesAndTails.get(t2.to).size() == 0) {
 									tails.add(output);
@@ -311,34 +263,26 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 
 			for (SFTInputMove<P, F, S> t1 : sft1.getInputMovesFrom(currState.first)) {
 				if (t1.outputFunctions.size() != 0) {
-					List<List<SFTMove<P, F, S>>> chains = sft2.getPossibleTransitionChains(currState.second, t1.outputFunctions.size());
-					for (List<SFTMove<P, F, S>> chain : chains) {
-						// according to the algorithm of method getPossibleTransitionChains, there is at least one SFTMove
-						// in a chain.
-						SFTInputMove<P, F, S> t2 = (SFTInputMove<P, F, S>) chain.get(0);
-						P intersGuard = ba.MkAnd(t1.guard, ba.MkSubstFuncPred(t1.outputFunctions.get(0), t2.guard));
-						List<F> outputFunctions = new LinkedList<F>();
-						for (F t2OutputFunction : t2.outputFunctions)
-							outputFunctions.add(ba.MkSubstFuncFunc(t2OutputFunction, t1.outputFunctions.get(0)));
-						// initialize the composed guard.
+					List<F> t1OutputFunctions = new ArrayList<F>(t1.outputFunctions);
+					List<Pair<P, List<SFTInputMove<P, F, S>>>> chains = new ArrayList<Pair<P, List<SFTInputMove<P, F, S>>>>();
+					satisfiableChains(chainSteps(sft2, currState.second, t1OutputFunctions.size(), chainCache),
+							t1OutputFunctions, 0, t1.guard, new LinkedList<SFTInputMove<P, F, S>>(), chains, ba, deadline);
+					for (Pair<P, List<SFTInputMove<P, F, S>>> chain : chains) {
 						// consider the transition p --phi/[f1, f2]--> p' in sft1 and
 						// q --psi/[g]--> q' --gamma/[h] --> q'' in sft2, the composed transition should be
 						// (p, q) --phi and psi(F) and gamma(f2)/[g(f1), h(f2)]--> (p', q'')
-						for (int i = 1; i < chain.size(); i++) {
-							t2 = (SFTInputMove<P, F, S>) chain.get(i);
-							intersGuard = ba.MkAnd(intersGuard, ba.MkSubstFuncPred(t1.outputFunctions.get(i), t2.guard));
-							for (F t2OutputFunction : t2.outputFunctions)
-								outputFunctions.add(ba.MkSubstFuncFunc(t2OutputFunction, t1.outputFunctions.get(i)));
-						}
-						if (ba.IsSatisfiable(intersGuard)) {
-							Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(t1.to, chain.get(chain.size() - 1).to);
-							int nextStateId = getStateId(nextState, reached, toVisit);
+						List<F> outputFunctions = new LinkedList<F>();
+						for (int i = 0; i < chain.second.size(); i++)
+							for (F t2OutputFunction : chain.second.get(i).outputFunctions)
+								outputFunctions.add(ba.MkSubstFuncFunc(t2OutputFunction, t1OutputFunctions.get(i)));
+						Pair<Integer, Integer> nextState = new Pair<Integer, Integer>(t1.to,
+								chain.second.get(chain.second.size() - 1).to);
+						int nextStateId = getStateId(nextState, reached, toVisit);
 
-							SFTInputMove<P, F, S> newTrans = new SFTInputMove<P, F, S>(currStateId, nextStateId,
-									intersGuard, outputFunctions);
+						SFTInputMove<P, F, S> newTrans = new SFTInputMove<P, F, S>(currStateId, nextStateId,
+								chain.first, outputFunctions);
 
-							transitions.add(newTrans);
-						}
+						transitions.add(newTrans);
 					}
 				} else { // t1.outputFunctions.size() == 0
 					if (ba.IsSatisfiable(t1.guard)) {
@@ -494,41 +438,69 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 		return epsilonClosure;
 	}
 
-	private List<List<SFTMove<P, F, S>>> getPossibleTransitionChains(Integer startState, int steps) {
-		return possibleTransitionChains(this, startState, steps);
+	// A move of a chain of moves of an epsilon-free SFT, followed by the moves that can continue the chain. The
+	// continuations only depend on the target state and the remaining number of steps, so they are shared.
+	private static final class ChainStep<P, F, S> {
+		final SFTInputMove<P, F, S> move;
+		final List<ChainStep<P, F, S>> next;
+
+		ChainStep(SFTInputMove<P, F, S> move, List<ChainStep<P, F, S>> next) {
+			this.move = move;
+			this.next = next;
+		}
 	}
 
 	/**
-	 * Given a symbolic finite transducer and the start state, return all possible transition chains in
-	 * <code>steps</code> steps
-	 * @param sft symbolic finite transducer
+	 * Given an epsilon-free symbolic finite transducer and the start state, return all possible transition chains in
+	 * <code>steps</code> steps, as first moves followed by their continuations
+	 * @param sft epsilon-free symbolic finite transducer
 	 * @param startState the start state which could be any state, including but not limited to the initial state
-	 * @param steps the number of steps, which should be a natural number
+	 * @param steps the number of steps, which should be a positive number
+	 * @param cache the chains already computed, keyed by start state and number of steps
 	 * @return
 	 */
-	private static <P, F, S> List<List<SFTMove<P, F, S>>> possibleTransitionChains(SFT<P, F, S> sft, Integer startState, int steps) {
-		List<List<SFTMove<P, F, S>>> chains = new ArrayList<List<SFTMove<P, F, S>>>();
-		for (SFTMove<P, F, S> initialTransition: sft.getInputMovesFrom(startState)) {
-			List<SFTMove<P, F, S>> tempList = new LinkedList<SFTMove<P, F, S>>();
-			tempList.add(initialTransition);
-			backtrack(chains, tempList, sft, steps - 1);
+	private static <P, F, S> List<ChainStep<P, F, S>> chainSteps(SFT<P, F, S> sft, Integer startState, int steps,
+			Map<Pair<Integer, Integer>, List<ChainStep<P, F, S>>> cache) {
+		Pair<Integer, Integer> key = new Pair<Integer, Integer>(startState, steps);
+		List<ChainStep<P, F, S>> chainSteps = cache.get(key);
+		if (chainSteps == null) {
+			chainSteps = new ArrayList<ChainStep<P, F, S>>();
+			for (SFTInputMove<P, F, S> move : sft.getInputMovesFrom(startState)) {
+				List<ChainStep<P, F, S>> next = steps > 1 ? chainSteps(sft, move.to, steps - 1, cache)
+						: new ArrayList<ChainStep<P, F, S>>();
+				chainSteps.add(new ChainStep<P, F, S>(move, next));
+			}
+			cache.put(key, chainSteps);
 		}
-		return chains;
+		return chainSteps;
 	}
 
-	// use backtrack method to get all possible transition chains
-	private static <P, F, S> void backtrack(List<List<SFTMove<P, F, S>>> chains, List<SFTMove<P, F, S>> tempList, SFT<P, F, S> sft, int remainSteps) {
-		if (remainSteps < 0)
-			return; // no solution
-		else if (remainSteps == 0)
-			chains.add(new ArrayList<SFTMove<P, F, S>>(tempList));
-		else {
-			Integer currentState = tempList.get(tempList.size() - 1).to;
-			for (SFTMove<P, F, S> transition: sft.getTransitionsFrom(currentState)) {
-				tempList.add(transition);
-				backtrack(chains, tempList, sft, remainSteps - 1);
-				tempList.remove(tempList.size() - 1);
-			}
+	/**
+	 * Collects the chains starting with <code>steps</code> whose i-th guard, instantiated with the i-th function, is
+	 * satisfiable together with <code>guard</code> and the previous guards. A chain is abandoned as soon as its
+	 * prefix is unsatisfiable.
+	 * @param functions one function per move of a chain
+	 * @param i position in the chain of the moves in <code>steps</code>
+	 * @param guard conjunction of the guards of the prefix, null for no constraint
+	 * @param path moves of the prefix
+	 * @param chains the chains found with the conjunction of their guards
+	 */
+	private static <P, F, S> void satisfiableChains(List<ChainStep<P, F, S>> steps, List<F> functions, int i, P guard,
+			LinkedList<SFTInputMove<P, F, S>> path, List<Pair<P, List<SFTInputMove<P, F, S>>>> chains,
+			BooleanAlgebraSubst<P, F, S> ba, Deadline deadline) throws TimeoutException {
+		for (ChainStep<P, F, S> step : steps) {
+			deadline.check();
+			P stepGuard = ba.MkSubstFuncPred(functions.get(i), step.move.guard);
+			P intersGuard = guard == null ? stepGuard : ba.MkAnd(guard, stepGuard);
+			if (!ba.IsSatisfiable(intersGuard))
+				continue;
+			path.add(step.move);
+			if (i == functions.size() - 1)
+				chains.add(new Pair<P, List<SFTInputMove<P, F, S>>>(intersGuard,
+						new ArrayList<SFTInputMove<P, F, S>>(path)));
+			else
+				satisfiableChains(step.next, functions, i + 1, intersGuard, path, chains, ba, deadline);
+			path.removeLast();
 		}
 	}
 
@@ -547,145 +519,8 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 	public static <P, F, S> boolean decide1equality(SFT<P, F, S> sft1withEps,
 													SFT<P, F, S> sft2withEps,
 													BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
-		// Figure 3 line 1: C := A  \times B;
-		SFTProduct<P, F, S> product = SFTProduct.MkSFTProduct(sft1withEps, sft2withEps, ba);
-		// <code>product</code> is a product without epsilon transitions.
-
-		// Figure 3 line 1: Q := \{q_c^0 \mapsto (\epsilon, \epsilon)\};
-		HashMap<Integer, Pair<List<S>, List<S>>> reached = new HashMap<Integer, Pair<List<S>, List<S>>>();
-		reached.put(product.getInitialState(), new Pair(new ArrayList<S>(), new ArrayList<S>()));
-
-		// Figure 3 line 1: S := stack(q_c^0);
-		LinkedList<Integer> toVisit = new LinkedList<Integer>();
-		toVisit.add(product.getInitialState());
-
-		// Figure 3 line 2: \textbf{while} \ S \neq \emptyset
-		while (!toVisit.isEmpty()) {
-
-			// Figure 3 line 3: p := pop(S);
-			Integer currState = toVisit.pop();
-
-			// Figure 3 line 3: (\alpha, \beta) := Q(p);
-			Pair<List<S>, List<S>> promise = reached.get(currState);
-
-			// Figure 3 line 4: \textbf{foreach} \  (p, \varphi, (\textbf f, \textbf g), q) \in R_C(p)
-			for (SFTProductInputMove transition: product.getInputMovesFrom(currState)) {
-
-				// Figure 3 line 5: (u, v) := (\alpha \cdot \textbf f,\beta \cdot \textbf g);
-				List<F> u = new ArrayList<F>();
-				List<F> v = new ArrayList<F>();
-				for (S a: promise.first)
-					u.add(ba.MkFuncConst(a));
-				for (S b: promise.second)
-					v.add(ba.MkFuncConst(b));
-				u.addAll(transition.outputFunctions1);
-				v.addAll(transition.outputFunctions2);
-
-				// Figure 3 line 6: \textbf{if} \ q \in F_C \wedge |u| \neq |v| \ \textbf{return} \ f;
-				/* the following code is the precise implementation of Figure 3 line 6.
-				if (product.isFinalState(currState) && u.size() != v.size())
-					return false;
-				*/
-				// However, we add tails for final states, so the SFT here is different from the SFT described on paper.
-				// Here is the modification of Figure 3 line 6 so that the method decide1equality adapts to SFT with tails
-				if (product.isFinalState(currState)) {
-					Set<List<S>> tails1 = checkNotNull(product.getFinalStatesAndTails().get(currState).first);
-					Set<List<S>> tails2 = checkNotNull(product.getFinalStatesAndTails().get(currState).second);
-					// since product is constructed by 2 SFTs in MkSFTProduct in SFTProduct.java, tails1 and tails2
-					// could not be null pointers.
-					if (tails1.size() > 1 || tails2.size() > 1) // if any final state in any SFT has many tails, their
-						// outputs are uncertain, so 2 SFTs cannot be 1-equality
-						return false;
-					List<F> finalU = new ArrayList<F>(u);
-					List<F> finalV = new ArrayList<F>(v);
-					for (List<S> tail: tails1)
-						for (S element: tail)
-							finalU.add(ba.MkFuncConst(element));
-					for (List<S> tail: tails2)
-						for (S element: tail)
-							finalV.add(ba.MkFuncConst(element));
-					if (finalU.size() != finalV.size())
-						return false;
-					for (int i = 0; i < finalU.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, finalU.get(i), finalV.get(i)))
-							return false;
-				}
-
-				// Figure 3 line 7: \textbf{if} \ |u| \geq |v|
-				if (u.size() >= v.size()) {
-
-					// Figure 3 line 8: \textbf{if} \ \vee_{i=0}^{|v|-1}u_i \not\equiv_\varphi v_i \ \textbf{return} \ f;
-					for (int i = 0; i < v.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, u.get(i), v.get(i)))
-							return false;
-
-					// Figure 3 line 9: w := [u_{|v|,\dots,u_{|u|-1}}];
-					List<F> w = new ArrayList<F>();
-					for (int i = v.size(); i < u.size(); i++)
-						w.add(u.get(i));
-
-					// Figure 3 line 9: c := [\![ w]\!](witness(\varphi));
-					S witness = (S)transition.getWitness(ba);
-					List<S> c = new ArrayList<S>();
-					List<F> cF = new ArrayList<F>(); // a sequence of lamda x.alpha, where alpha is a constant S
-					// stored in List<S> c
-					for (int i = 0; i < u.size() - v.size(); i++) {
-						c.add(ba.MkSubstFuncConst(w.get(i), witness));
-						cF.add(ba.MkSubstFuncFunc(w.get(i), ba.MkFuncConst(witness)));
-					}
-
-					// Figure 3 line 10: \textbf{if} \ w \not\equiv_\varphi c \vee (q \in Dom(Q) \wedge Q(q) \neq
-					// (\textbf c, \epsilon)) \textbf{return} \ f;
-					for (int i = 0; i < u.size() - v.size(); i++)
-						if (!ba.AreEquivalent(ba.MkSubstFuncPred(w.get(i), (P)transition.guard),
-								ba.MkSubstFuncPred(cF.get(i), (P)transition.guard)))
-							return false;
-
-					Integer nextState = transition.to;
-					if (reached.containsKey(nextState) && !reached.get(nextState).equals(new Pair(c, new ArrayList<S>())))
-						return false;
-
-					// Figure 3 line 11: \textbf{if} \ q \not\in Dom(Q) \ push(q,S);
-					if (!reached.containsKey(nextState)) {
-						toVisit.push(nextState);
-
-						// Figure 3 line 11: Q(q):=(\textbf c, \epsilon);
-						reached.put(nextState, new Pair(c, new ArrayList<S>()));
-					}
-
-				// Figure 3 line 12: \textbf{if} \ |u|<|v| \dots (symmetrical \ to \ the \  case \ |u|>|v|)
-				} else { // u.size() < v.size()
-					for (int i = 0; i < u.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, u.get(i), v.get(i)))
-							return false;
-					List<F> w = new ArrayList<F>();
-					for (int i = u.size(); i < v.size(); i++)
-						w.add(v.get(i));
-					S witness = (S)transition.getWitness(ba);
-					List<S> c = new ArrayList<S>();
-					List<F> cF = new ArrayList<F>(); // a sequence of lamda x.alpha, where alpha is a constant S
-					// stored in List<S> c
-					for (int i = 0; i < v.size() - u.size(); i++) {
-						c.add(ba.MkSubstFuncConst(w.get(i), witness));
-						cF.add(ba.MkSubstFuncFunc(w.get(i), ba.MkFuncConst(witness)));
-					}
-					for (int i = 0; i < v.size() - u.size(); i++)
-						if (!ba.AreEquivalent(ba.MkSubstFuncPred(w.get(i), (P)transition.guard),
-								ba.MkSubstFuncPred(cF.get(i), (P)transition.guard)))
-							return false;
-					Integer nextState = transition.to;
-					if (reached.containsKey(nextState) && !reached.get(nextState).equals(new Pair(new ArrayList<S>(), c)))
-						return false;
-					if (!reached.containsKey(nextState)) {
-						toVisit.push(nextState);
-						reached.put(nextState, new Pair(new ArrayList<S>(), c));
-					}
-				}
-			}
-		}
-
-		// Figure 3 line 13: \textbf{return} \ t;
-		return true;
+		// the product is explored on the fly, see SFTEquivalence
+		return SFTEquivalence.decide1equality(sft1withEps, sft2withEps, ba);
 	}
 
 	public List<S> witness1disequality(SFT<P, F, S> otherSft, BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
@@ -702,130 +537,7 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 	public static <P, F, S> List<S> witness1disequality(SFT<P, F, S> sft1withEps,
 														SFT<P, F, S> sft2withEps,
 														BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
-		SFTProduct<P, F, S> product = SFTProduct.MkSFTProduct(sft1withEps, sft2withEps, ba);
-		// a product without epsilon transitions
-
-		HashMap<Integer, Pair<List<S>, List<S>>> reached = new HashMap<Integer, Pair<List<S>, List<S>>>();
-		LinkedList<Integer> toVisit = new LinkedList<Integer>();
-		HashMap<Integer, List<S>> path = new HashMap<Integer, List<S>>();
-
-		reached.put(product.getInitialState(), new Pair(new ArrayList<S>(), new ArrayList<S>()));
-		// stores reached states and its promise
-		toVisit.add(product.getInitialState());
-		path.put(product.getInitialState(), new ArrayList<S>());
-		// stores reached states and the latest path from the initial state to it, which means if there are many possible
-		// paths from the initial state to it, only store the latest used one in the following loop
-
-		while (!toVisit.isEmpty()) {
-
-			Integer currState = toVisit.pop();
-			Pair<List<S>, List<S>> promise = reached.get(currState);
-
-			for (SFTProductInputMove transition: product.getInputMovesFrom(currState)) {
-
-				List<S> previousPath = new ArrayList<S>(path.get(transition.from));
-				previousPath.add((S) transition.getWitness(ba));
-				path.put(transition.to, previousPath);
-
-				List<F> u = new ArrayList<F>();
-				List<F> v = new ArrayList<F>();
-				for (S a: promise.first)
-					u.add(ba.MkFuncConst(a));
-				for (S b: promise.second)
-					v.add(ba.MkFuncConst(b));
-				u.addAll(transition.outputFunctions1);
-				v.addAll(transition.outputFunctions2);
-
-				if (product.isFinalState(currState)) {
-					Set<List<S>> tails1 = checkNotNull(product.getFinalStatesAndTails().get(currState).first);
-					Set<List<S>> tails2 = checkNotNull(product.getFinalStatesAndTails().get(currState).second);
-
-					if (tails1.size() > 1 || tails2.size() > 1)
-						return previousPath;
-					List<F> finalU = new ArrayList<F>(u);
-					List<F> finalV = new ArrayList<F>(v);
-					for (List<S> tail: tails1)
-						for (S element: tail)
-							finalU.add(ba.MkFuncConst(element));
-					for (List<S> tail: tails2)
-						for (S element: tail)
-							finalV.add(ba.MkFuncConst(element));
-					if (finalU.size() != finalV.size())
-						return previousPath;
-					for (int i = 0; i < finalU.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, finalU.get(i), finalV.get(i)))
-							return previousPath;
-				}
-
-				if (u.size() >= v.size()) {
-					for (int i = 0; i < v.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, u.get(i), v.get(i))) {
-							previousPath.addAll(product.getWitness(transition.to, ba));
-							return previousPath;
-						}
-					List<F> w = new ArrayList<F>();
-					for (int i = v.size(); i < u.size(); i++)
-						w.add(u.get(i));
-					S witness = (S) transition.getWitness(ba);
-					List<S> c = new ArrayList<S>();
-					List<F> cF = new ArrayList<F>(); // a sequence of lamda x.alpha, where alpha is a constant S
-					// stored in List<S> c
-					for (int i = 0; i < u.size() - v.size(); i++) {
-						c.add(ba.MkSubstFuncConst(w.get(i), witness));
-						cF.add(ba.MkSubstFuncFunc(w.get(i), ba.MkFuncConst(witness)));
-					}
-					for (int i = 0; i < u.size() - v.size(); i++)
-						if (!ba.AreEquivalent(ba.MkSubstFuncPred(w.get(i), (P)transition.guard),
-								ba.MkSubstFuncPred(cF.get(i), (P)transition.guard))) {
-							previousPath.addAll(product.getWitness(transition.to, ba));
-							return previousPath;
-						}
-					Integer nextState = transition.to;
-					if (reached.containsKey(nextState) && !reached.get(nextState).equals(new Pair(c, new ArrayList<S>()))) {
-						previousPath.addAll(product.getWitness(transition.to, ba));
-						return previousPath;
-					}
-					if (!reached.containsKey(nextState)) {
-						toVisit.push(nextState);
-						reached.put(nextState, new Pair(c, new ArrayList<S>()));
-					}
-				} else { // u.size() < v.size()
-					for (int i = 0; i < u.size(); i++)
-						if (!ba.CheckGuardedEquality((P) transition.guard, u.get(i), v.get(i))) {
-							previousPath.addAll(product.getWitness(transition.to, ba));
-							return previousPath;
-						}
-					List<F> w = new ArrayList<F>();
-					for (int i = u.size(); i < v.size(); i++)
-						w.add(v.get(i));
-					S witness = (S) transition.getWitness(ba);
-					List<S> c = new ArrayList<S>();
-					List<F> cF = new ArrayList<F>(); // a sequence of lamda x.alpha, where alpha is a constant S
-					// stored in List<S> c
-					for (int i = 0; i < v.size() - u.size(); i++) {
-						c.add(ba.MkSubstFuncConst(w.get(i), witness));
-						cF.add(ba.MkSubstFuncFunc(w.get(i), ba.MkFuncConst(witness)));
-					}
-					for (int i = 0; i < v.size() - u.size(); i++)
-						if (!ba.AreEquivalent(ba.MkSubstFuncPred(w.get(i), (P)transition.guard),
-								ba.MkSubstFuncPred(cF.get(i), (P)transition.guard))) {
-							previousPath.addAll(product.getWitness(transition.to, ba));
-							return previousPath;
-						}
-					Integer nextState = transition.to;
-					if (reached.containsKey(nextState) && !reached.get(nextState).equals(new Pair(new ArrayList<S>(), c))) {
-						previousPath.addAll(product.getWitness(transition.to, ba));
-						return previousPath;
-					}
-					if (!reached.containsKey(nextState)) {
-						toVisit.push(nextState);
-						reached.put(nextState, new Pair(new ArrayList<S>(), c));
-					}
-				}
-
-			}
-		}
-		return null; // two SFTs are partial equivalent
+		return SFTEquivalence.witness1disequality(sft1withEps, sft2withEps, ba);
 	}
 
 	/**
@@ -924,8 +636,11 @@ public class SFT<P, F, S> extends Automaton<P, S> {
 		reached.put(p, initialState);
 		toVisit.add(p);
 
+		Deadline deadline = Deadline.current();
 		// Combined has set of variables the disjoint union of the two sets
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, Integer> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 
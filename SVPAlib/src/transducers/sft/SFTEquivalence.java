@@ -0,0 +1,368 @@
+package transducers.sft;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebraSubst;
+import utilities.Deadline;
+import utilities.Pair;
+
+/**
+ * The 1-equality (partial equivalence) check of figure 3 of the paper named
+ * after Symbolic Finite State Transducers: Algorithms And Applications, on the
+ * product of two SFTs built on the fly. The search only follows the pairs of
+ * states that reach a pair of final states, builds the moves of a pair when
+ * it first needs them, and stops at the first conflicting output or promise.
+ * Promises, paths and input suffixes are immutable lists shared between pairs
+ * of states.
+ */
+final class SFTEquivalence<P, F, S> {
+
+	// An immutable list built by adding elements in front of a shared list,
+	// null is the empty list
+	private static final class Cons<S> {
+		final S head;
+		final Cons<S> tail;
+
+		Cons(S head, Cons<S> tail) {
+			this.head = head;
+			this.tail = tail;
+		}
+	}
+
+	// The outputs one SFT produced and the other did not yet, as constants
+	// and as constant functions. One of the two sides is empty.
+	private static final class Promise<F, S> {
+		final List<S> left;
+		final List<S> right;
+		final List<F> leftFunctions;
+		final List<F> rightFunctions;
+
+		Promise(List<S> left, List<S> right, List<F> leftFunctions, List<F> rightFunctions) {
+			this.left = left;
+			this.right = right;
+			this.leftFunctions = leftFunctions;
+			this.rightFunctions = rightFunctions;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Promise))
+				return false;
+			Promise<?, ?> promise = (Promise<?, ?>) other;
+			return left.equals(promise.left) && right.equals(promise.right);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * left.hashCode() + right.hashCode();
+		}
+	}
+
+	// A move of the product
+	private static final class ProductMove<P, F, S> {
+		final P guard;
+		final List<F> outputFunctions1;
+		final List<F> outputFunctions2;
+		final Pair<Integer, Integer> to;
+
+		ProductMove(P guard, SFTInputMove<P, F, S> t1, SFTInputMove<P, F, S> t2) {
+			this.guard = guard;
+			this.outputFunctions1 = t1.outputFunctions;
+			this.outputFunctions2 = t2.outputFunctions;
+			this.to = new Pair<Integer, Integer>(t1.to, t2.to);
+		}
+	}
+
+	// The concatenation of two lists, without copying them
+	private static final class Concat<E> extends AbstractList<E> {
+		private final List<E> first;
+		private final List<E> second;
+
+		Concat(List<E> first, List<E> second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public E get(int index) {
+			return index < first.size() ? first.get(index) : second.get(index - first.size());
+		}
+
+		@Override
+		public int size() {
+			return first.size() + second.size();
+		}
+	}
+
+	private final SFT<P, F, S> sft1;
+	private final SFT<P, F, S> sft2;
+	private final BooleanAlgebraSubst<P, F, S> ba;
+	private final Deadline deadline = Deadline.current();
+	private final Promise<F, S> noPromise;
+
+	// moves of the product built so far
+	private final Map<Pair<Integer, Integer>, List<ProductMove<P, F, S>>> movesFrom = new HashMap<Pair<Integer, Integer>, List<ProductMove<P, F, S>>>();
+	// pairs known to reach a pair of final states, with an input leading there
+	private final Map<Pair<Integer, Integer>, Cons<S>> suffixes = new HashMap<Pair<Integer, Integer>, Cons<S>>();
+	// pairs known not to reach a pair of final states
+	private final Set<Pair<Integer, Integer>> dead = new HashSet<Pair<Integer, Integer>>();
+	// constant functions of the promised outputs
+	private final Map<S, F> constants = new HashMap<S, F>();
+
+	private SFTEquivalence(SFT<P, F, S> sft1, SFT<P, F, S> sft2, BooleanAlgebraSubst<P, F, S> ba) {
+		this.sft1 = sft1;
+		this.sft2 = sft2;
+		this.ba = ba;
+		noPromise = new Promise<F, S>(new ArrayList<S>(), new ArrayList<S>(), new ArrayList<F>(), new ArrayList<F>());
+	}
+
+	/**
+	 * @return true iff <code>sft1withEps</code> and <code>sft2withEps</code>
+	 *         are 1-equality
+	 * @throws TimeoutException
+	 */
+	static <P, F, S> boolean decide1equality(SFT<P, F, S> sft1withEps, SFT<P, F, S> sft2withEps,
+			BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
+		return new SFTEquivalence<P, F, S>(sft1withEps.removeEpsilonMoves(ba), sft2withEps.removeEpsilonMoves(ba), ba)
+				.findConflict(false) == null;
+	}
+
+	/**
+	 * @return an input on which <code>sft1withEps</code> and
+	 *         <code>sft2withEps</code> produce different outputs, null if they
+	 *         are 1-equality
+	 * @throws TimeoutException
+	 */
+	static <P, F, S> List<S> witness1disequality(SFT<P, F, S> sft1withEps, SFT<P, F, S> sft2withEps,
+			BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
+		return new SFTEquivalence<P, F, S>(sft1withEps.removeEpsilonMoves(ba), sft2withEps.removeEpsilonMoves(ba), ba)
+				.findConflict(true);
+	}
+
+	// Returns an input leading to the first conflict, null if there is none.
+	// If checkWitness holds, the candidate inputs are run on the SFTs to
+	// return one on which their outputs differ.
+	private List<S> findConflict(boolean checkWitness) throws TimeoutException {
+		Pair<Integer, Integer> initialState = new Pair<Integer, Integer>(sft1.getInitialState(),
+				sft2.getInitialState());
+		if (!isLive(initialState))
+			return null;
+
+		// Figure 3 line 1: Q := \{q_c^0 \mapsto (\epsilon, \epsilon)\}; S := stack(q_c^0);
+		Map<Pair<Integer, Integer>, Promise<F, S>> reached = new HashMap<Pair<Integer, Integer>, Promise<F, S>>();
+		// reversed input along which a pair was first reached
+		Map<Pair<Integer, Integer>, Cons<S>> paths = new HashMap<Pair<Integer, Integer>, Cons<S>>();
+		LinkedList<Pair<Integer, Integer>> toVisit = new LinkedList<Pair<Integer, Integer>>();
+		reached.put(initialState, noPromise);
+		paths.put(initialState, null);
+		toVisit.add(initialState);
+
+		while (!toVisit.isEmpty()) {
+			deadline.check();
+
+			Pair<Integer, Integer> currState = toVisit.pop();
+			Promise<F, S> promise = reached.get(currState);
+			Cons<S> path = paths.get(currState);
+
+			// Figure 3 line 4: \textbf{foreach} \ (p, \varphi, (\textbf f, \textbf g), q) \in R_C(p)
+			for (ProductMove<P, F, S> move : getMovesFrom(currState)) {
+				if (!isLive(move.to))
+					continue;
+
+				S witness = ba.generateWitness(move.guard);
+
+				// Figure 3 line 6, adapted to the tails of the final states
+				if (sft1.isFinalState(currState.first) && sft2.isFinalState(currState.second)
+						&& !finalOutputsAgree(promise, move, currState)) {
+					List<List<S>> candidates = new ArrayList<List<S>>();
+					candidates.add(toList(new Cons<S>(witness, path), null));
+					candidates.add(toList(path, null));
+					candidates.add(toList(new Cons<S>(witness, path), suffixes.get(move.to)));
+					return pick(candidates, checkWitness);
+				}
+
+				Promise<F, S> nextPromise = nextPromise(promise, move, witness);
+				Promise<F, S> previous = reached.get(move.to);
+				if (nextPromise != null && previous == null) {
+					// Figure 3 line 11: \textbf{if} \ q \not\in Dom(Q) \ push(q,S); Q(q):=(\textbf c, \epsilon);
+					reached.put(move.to, nextPromise);
+					paths.put(move.to, new Cons<S>(witness, path));
+					toVisit.push(move.to);
+				} else if (nextPromise == null || !previous.equals(nextPromise)) {
+					List<List<S>> candidates = new ArrayList<List<S>>();
+					candidates.add(toList(new Cons<S>(witness, path), suffixes.get(move.to)));
+					if (nextPromise != null)
+						candidates.add(toList(paths.get(move.to), suffixes.get(move.to)));
+					return pick(candidates, checkWitness);
+				}
+			}
+		}
+
+		// Figure 3 line 13: \textbf{return} \ t;
+		return null;
+	}
+
+	// Figure 3 lines 5-10 and 12, returns the promise after the move on the
+	// witness of its guard, null if the outputs conflict
+	private Promise<F, S> nextPromise(Promise<F, S> promise, ProductMove<P, F, S> move, S witness)
+			throws TimeoutException {
+		// Figure 3 line 5: (u, v) := (\alpha \cdot \textbf f,\beta \cdot \textbf g);
+		List<F> u = new Concat<F>(promise.leftFunctions, move.outputFunctions1);
+		List<F> v = new Concat<F>(promise.rightFunctions, move.outputFunctions2);
+		boolean leftAhead = u.size() >= v.size();
+		List<F> longer = leftAhead ? u : v;
+		int common = leftAhead ? v.size() : u.size();
+
+		// Figure 3 line 8: \textbf{if} \ \vee_{i=0}^{|v|-1}u_i \not\equiv_\varphi v_i \ \textbf{return} \ f;
+		for (int i = 0; i < common; i++)
+			if (!ba.CheckGuardedEquality(move.guard, u.get(i), v.get(i)))
+				return null;
+
+		// Figure 3 lines 9-10: c := [\![ w]\!](witness(\varphi)), w must be constant on \varphi
+		List<S> c = new ArrayList<S>();
+		List<F> cFunctions = new ArrayList<F>();
+		for (int i = common; i < longer.size(); i++) {
+			F w = longer.get(i);
+			if (!ba.AreEquivalent(ba.MkSubstFuncPred(w, move.guard),
+					ba.MkSubstFuncPred(ba.MkSubstFuncFunc(w, ba.MkFuncConst(witness)), move.guard)))
+				return null;
+			S ci = ba.MkSubstFuncConst(w, witness);
+			c.add(ci);
+			cFunctions.add(constant(ci));
+		}
+		if (c.isEmpty())
+			return noPromise;
+		if (leftAhead)
+			return new Promise<F, S>(c, noPromise.right, cFunctions, noPromise.rightFunctions);
+		return new Promise<F, S>(noPromise.left, c, noPromise.leftFunctions, cFunctions);
+	}
+
+	private boolean finalOutputsAgree(Promise<F, S> promise, ProductMove<P, F, S> move,
+			Pair<Integer, Integer> state) throws TimeoutException {
+		Set<List<S>> tails1 = sft1.getFinalStatesAndTails().get(state.first);
+		Set<List<S>> tails2 = sft2.getFinalStatesAndTails().get(state.second);
+		// if any final state has many tails, the outputs are uncertain
+		if (tails1.size() > 1 || tails2.size() > 1)
+			return false;
+		List<F> finalU = new Concat<F>(promise.leftFunctions, move.outputFunctions1);
+		List<F> finalV = new Concat<F>(promise.rightFunctions, move.outputFunctions2);
+		for (List<S> tail : tails1)
+			finalU = new Concat<F>(finalU, constants(tail));
+		for (List<S> tail : tails2)
+			finalV = new Concat<F>(finalV, constants(tail));
+		if (finalU.size() != finalV.size())
+			return false;
+		for (int i = 0; i < finalU.size(); i++)
+			if (!ba.CheckGuardedEquality(move.guard, finalU.get(i), finalV.get(i)))
+				return false;
+		return true;
+	}
+
+	private List<F> constants(List<S> symbols) {
+		List<F> functions = new ArrayList<F>(symbols.size());
+		for (S s : symbols)
+			functions.add(constant(s));
+		return functions;
+	}
+
+	private F constant(S s) {
+		F f = constants.get(s);
+		if (f == null) {
+			f = ba.MkFuncConst(s);
+			constants.put(s, f);
+		}
+		return f;
+	}
+
+	private List<ProductMove<P, F, S>> getMovesFrom(Pair<Integer, Integer> state) throws TimeoutException {
+		List<ProductMove<P, F, S>> moves = movesFrom.get(state);
+		if (moves == null) {
+			moves = new ArrayList<ProductMove<P, F, S>>();
+			for (SFTInputMove<P, F, S> t1 : sft1.getInputMovesFrom(state.first))
+				for (SFTInputMove<P, F, S> t2 : sft2.getInputMovesFrom(state.second)) {
+					P intersGuard = ba.MkAnd(t1.guard, t2.guard);
+					if (ba.IsSatisfiable(intersGuard))
+						moves.add(new ProductMove<P, F, S>(intersGuard, t1, t2));
+				}
+			movesFrom.put(state, moves);
+		}
+		return moves;
+	}
+
+	// Breadth first search for a pair of final states. On success the pairs
+	// on the path found get their suffix, on failure all the pairs visited
+	// are dead, since they only reach each other.
+	private boolean isLive(Pair<Integer, Integer> start) throws TimeoutException {
+		if (suffixes.containsKey(start))
+			return true;
+		if (dead.contains(start))
+			return false;
+
+		Map<Pair<Integer, Integer>, Pair<Integer, Integer>> parent = new HashMap<Pair<Integer, Integer>, Pair<Integer, Integer>>();
+		Map<Pair<Integer, Integer>, S> via = new HashMap<Pair<Integer, Integer>, S>();
+		LinkedList<Pair<Integer, Integer>> toVisit = new LinkedList<Pair<Integer, Integer>>();
+		parent.put(start, null);
+		toVisit.add(start);
+
+		while (!toVisit.isEmpty()) {
+			deadline.check();
+
+			Pair<Integer, Integer> currState = toVisit.removeFirst();
+			if (suffixes.containsKey(currState)
+					|| (sft1.isFinalState(currState.first) && sft2.isFinalState(currState.second))) {
+				Cons<S> suffix = suffixes.get(currState);
+				suffixes.put(currState, suffix);
+				for (Pair<Integer, Integer> s = currState; parent.get(s) != null; s = parent.get(s)) {
+					suffix = new Cons<S>(via.get(s), suffix);
+					suffixes.put(parent.get(s), suffix);
+				}
+				return true;
+			}
+
+			for (ProductMove<P, F, S> move : getMovesFrom(currState))
+				if (!dead.contains(move.to) && !parent.containsKey(move.to)) {
+					parent.put(move.to, currState);
+					via.put(move.to, ba.generateWitness(move.guard));
+					toVisit.add(move.to);
+				}
+		}
+
+		dead.addAll(parent.keySet());
+		return false;
+	}
+
+	// The reverse of reversedPrefix followed by suffix
+	private static <S> List<S> toList(Cons<S> reversedPrefix, Cons<S> suffix) {
+		LinkedList<S> list = new LinkedList<S>();
+		for (Cons<S> c = reversedPrefix; c != null; c = c.tail)
+			list.addFirst(c.head);
+		for (Cons<S> c = suffix; c != null; c = c.tail)
+			list.addLast(c.head);
+		return new ArrayList<S>(list);
+	}
+
+	// The first candidate on which the outputs of the SFTs differ, the first
+	// candidate if there is none or if checkWitness does not hold
+	private List<S> pick(List<List<S>> candidates, boolean checkWitness) throws TimeoutException {
+		if (checkWitness) {
+			SFTRunner<P, F, S> runner1 = new SFTRunner<P, F, S>(sft1, ba);
+			SFTRunner<P, F, S> runner2 = new SFTRunner<P, F, S>(sft2, ba);
+			for (List<S> candidate : candidates) {
+				List<S> output1 = runner1.outputOn(candidate);
+				List<S> output2 = runner2.outputOn(candidate);
+				if (output1 != null && output2 != null && !output1.equals(output2))
+					return candidate;
+			}
+		}
+		return candidates.get(0);
+	}
+}
@@ -0,0 +1,210 @@
+package transducers.sft;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebraSubst;
+
+/**
+ * A chain of SFTs where the output of every stage is the input of the next
+ * one. Inputs are run through the fused product of the stages on the fly: the
+ * output of a chunk of input is passed down the chain before the next chunk is
+ * read, and no intermediate SFT is built. The composed SFT can still be built
+ * with {@link #compose()}.
+ *
+ * @param <P>
+ *            The type of predicates forming the Boolean algebra
+ * @param <F>
+ *            The type of functions S->S in the Boolean Algebra
+ * @param <S>
+ *            The domain of the Boolean algebra
+ */
+public class SFTPipeline<P, F, S> {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final List<SFT<P, F, S>> stages;
+	private final List<SFTRunner<P, F, S>> runners;
+	private final BooleanAlgebraSubst<P, F, S> ba;
+
+	/**
+	 * Compiles the runners of <code>stages</code>, which are applied in order
+	 *
+	 * @throws TimeoutException
+	 */
+	public SFTPipeline(List<SFT<P, F, S>> stages, BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
+		checkArgument(!stages.isEmpty(), "A pipeline needs at least one stage");
+		this.stages = new ArrayList<SFT<P, F, S>>(stages);
+		this.ba = ba;
+		runners = new ArrayList<SFTRunner<P, F, S>>();
+		for (SFT<P, F, S> stage : stages)
+			runners.add(new SFTRunner<P, F, S>(stage, ba));
+	}
+
+	/**
+	 * @return number of stages
+	 */
+	public int size() {
+		return stages.size();
+	}
+
+	/**
+	 * @return one of the outputs of the pipeline on <code>input</code>, null
+	 *         if a stage rejects its input
+	 * @throws TimeoutException
+	 */
+	public List<S> outputOn(List<S> input) throws TimeoutException {
+		List<SFTRunner<P, F, S>.Run> runs = start();
+		List<S> output = new ArrayList<S>();
+		for (int from = 0; from < input.size(); from += CHUNK_SIZE) {
+			List<S> chunkOutput = push(runs, input.subList(from, Math.min(from + CHUNK_SIZE, input.size())), false);
+			if (chunkOutput == null)
+				return null;
+			output.addAll(chunkOutput);
+		}
+		List<S> lastOutput = push(runs, new ArrayList<S>(), true);
+		if (lastOutput == null)
+			return null;
+		output.addAll(lastOutput);
+		return output;
+	}
+
+	private List<SFTRunner<P, F, S>.Run> start() {
+		List<SFTRunner<P, F, S>.Run> runs = new ArrayList<SFTRunner<P, F, S>.Run>();
+		for (SFTRunner<P, F, S> runner : runners)
+			runs.add(runner.start());
+		return runs;
+	}
+
+	// Feeds symbols to the first stage and the output of every stage to the
+	// next one, ending the input of every stage if finish holds. Returns the
+	// output of the last stage, null if a stage rejects.
+	private static <P, F, S> List<S> push(List<SFTRunner<P, F, S>.Run> runs, List<S> symbols, boolean finish)
+			throws TimeoutException {
+		for (SFTRunner<P, F, S>.Run run : runs) {
+			for (S symbol : symbols)
+				if (!run.feed(symbol))
+					return null;
+			if (finish && !run.finish())
+				return null;
+			symbols = run.takeOutput();
+		}
+		return symbols;
+	}
+
+	/**
+	 * Reads all of <code>in</code> in chunks and writes the output of
+	 * <code>pipeline</code> to <code>out</code> while reading. When every
+	 * stage has a {@link CharSFTTable} the chunks go through the tables,
+	 * otherwise through the generic runners. Reading stops as soon as a stage
+	 * rejects its input. Neither stream is closed.
+	 *
+	 * @return true iff every stage accepts its input
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public static <P, F> boolean transduce(SFTPipeline<P, F, Character> pipeline, Readable in, Writer out)
+			throws IOException, TimeoutException {
+		List<CharSFTTable> tables = new ArrayList<CharSFTTable>();
+		for (SFTRunner<P, F, Character> runner : pipeline.runners)
+			if (runner.getCharTable() != null)
+				tables.add(runner.getCharTable());
+		if (tables.size() == pipeline.size())
+			return transduce(tables, in, out);
+
+		List<SFTRunner<P, F, Character>.Run> runs = pipeline.start();
+		CharBuffer input = CharBuffer.allocate(CHUNK_SIZE);
+		List<Character> chunk = new ArrayList<Character>(CHUNK_SIZE);
+		while (in.read(input) >= 0) {
+			input.flip();
+			chunk.clear();
+			while (input.hasRemaining())
+				chunk.add(input.get());
+			input.clear();
+			List<Character> output = push(runs, chunk, false);
+			if (output == null)
+				return false;
+			write(output, out);
+		}
+		List<Character> output = push(runs, new ArrayList<Character>(), true);
+		if (output == null)
+			return false;
+		write(output, out);
+		return true;
+	}
+
+	private static boolean transduce(List<CharSFTTable> tables, Readable in, Writer out)
+			throws IOException, TimeoutException {
+		List<CharSFTTable.Run> runs = new ArrayList<CharSFTTable.Run>();
+		for (CharSFTTable table : tables)
+			runs.add(table.start());
+
+		CharBuffer input = CharBuffer.allocate(CHUNK_SIZE);
+		while (in.read(input) >= 0) {
+			input.flip();
+			char[] chunk = input.array();
+			int off = input.position();
+			int len = input.remaining();
+			for (CharSFTTable.Run run : runs) {
+				if (!run.feed(chunk, off, len))
+					return false;
+				chunk = run.getBuffer();
+				off = 0;
+				len = run.getLength();
+			}
+			input.clear();
+			out.write(chunk, off, len);
+			for (CharSFTTable.Run run : runs)
+				run.clear();
+		}
+
+		char[] chunk = new char[0];
+		int len = 0;
+		for (CharSFTTable.Run run : runs) {
+			if (!run.feed(chunk, 0, len) || !run.finish())
+				return false;
+			chunk = run.getBuffer();
+			len = run.getLength();
+		}
+		out.write(chunk, 0, len);
+		return true;
+	}
+
+	private static void write(List<Character> symbols, Writer out) throws IOException {
+		char[] buffer = new char[symbols.size()];
+		for (int i = 0; i < buffer.length; i++)
+			buffer[i] = symbols.get(i);
+		out.write(buffer);
+	}
+
+	/**
+	 * Builds the SFT composing all the stages. Adjacent stages are composed
+	 * first when the product of their numbers of states is the smallest.
+	 *
+	 * @throws TimeoutException
+	 */
+	public SFT<P, F, S> compose() throws TimeoutException {
+		List<SFT<P, F, S>> sfts = new ArrayList<SFT<P, F, S>>(stages);
+		while (sfts.size() > 1) {
+			int best = 0;
+			long bestSize = Long.MAX_VALUE;
+			for (int i = 0; i + 1 < sfts.size(); i++) {
+				long size = (long) sfts.get(i).stateCount() * sfts.get(i + 1).stateCount();
+				if (size < bestSize) {
+					best = i;
+					bestSize = size;
+				}
+			}
+			sfts.set(best, SFT.compose(sfts.get(best), sfts.get(best + 1), ba));
+			sfts.remove(best + 1);
+		}
+		return sfts.get(0);
+	}
+}
@@ -0,0 +1,370 @@
+package transducers.sft;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sat4j.specs.TimeoutException;
+
+import theory.BooleanAlgebraSubst;
+import theory.characters.CharFunc;
+import theory.characters.CharPred;
+import theory.intervals.UnaryCharIntervalSolver;
+import utilities.Deadline;
+
+/**
+ * Streaming runtime of an SFT. The epsilon-free SFT is compiled once into
+ * arrays indexed by dense state ids, and every input symbol is then consumed
+ * by one iterative step.
+ *
+ * A run of a deterministic SFT writes the output of every move as soon as the
+ * move is taken. A run of a nondeterministic SFT keeps one path per reachable
+ * state, the first one in the order explored by
+ * {@link SFT#outputOn(List, BooleanAlgebraSubst)}, and writes the pending
+ * output of the paths as soon as a single path is left. Deterministic SFTs
+ * over characters are also compiled into a {@link CharSFTTable} the first
+ * time {@link #transduce(SFTRunner, Readable, Writer)} needs it. Since output is
+ * written before the input is accepted, it is meaningful only if the run
+ * accepts.
+ *
+ * @param <P>
+ *            The type of predicates forming the Boolean algebra
+ * @param <F>
+ *            The type of functions S->S in the Boolean Algebra
+ * @param <S>
+ *            The domain of the Boolean algebra
+ */
+public class SFTRunner<P, F, S> {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final BooleanAlgebraSubst<P, F, S> ba;
+	private final boolean isDeterministic;
+	private final int stateCount;
+
+	// moves of state q are the positions moveBegin[q] to moveBegin[q + 1] - 1
+	private final int[] moveBegin;
+	private final P[] guards;
+	private final int[] targets;
+	private final F[][] outputFunctions;
+
+	// output appended when accepting in a state, null for non-final states
+	private final List<S>[] tails;
+
+	// epsilon-free SFT, kept until the table is built
+	private SFT<P, F, S> epsFree;
+	// table of a deterministic SFT over characters, built on first use, null
+	// if not applicable
+	private CharSFTTable table;
+
+	/**
+	 * Compiles <code>sft</code>, removing its epsilon moves
+	 *
+	 * @throws TimeoutException
+	 */
+	@SuppressWarnings("unchecked")
+	public SFTRunner(SFT<P, F, S> sft, BooleanAlgebraSubst<P, F, S> ba) throws TimeoutException {
+		this.ba = ba;
+		epsFree = sft.removeEpsilonMoves(ba);
+		isDeterministic = epsFree.isDeterministic();
+
+		// dense ids, the initial state is 0
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		List<Integer> states = new ArrayList<Integer>();
+		ids.put(epsFree.getInitialState(), 0);
+		states.add(epsFree.getInitialState());
+		for (Integer state : epsFree.getStates())
+			if (!ids.containsKey(state)) {
+				ids.put(state, states.size());
+				states.add(state);
+			}
+		stateCount = states.size();
+
+		int moveCount = 0;
+		for (Integer state : states)
+			moveCount += epsFree.getInputMovesFrom(state).size();
+
+		moveBegin = new int[stateCount + 1];
+		guards = (P[]) new Object[moveCount];
+		targets = new int[moveCount];
+		outputFunctions = (F[][]) new Object[moveCount][];
+		tails = (List<S>[]) new List<?>[stateCount];
+
+		int i = 0;
+		for (int q = 0; q < stateCount; q++) {
+			Integer state = states.get(q);
+			moveBegin[q] = i;
+			for (SFTInputMove<P, F, S> move : epsFree.getInputMovesFrom(state)) {
+				guards[i] = move.guard;
+				targets[i] = ids.get(move.to);
+				outputFunctions[i] = (F[]) move.outputFunctions.toArray();
+				i++;
+			}
+			if (epsFree.isFinalState(state)) {
+				Set<List<S>> stateTails = epsFree.getFinalStatesAndTails().get(state);
+				tails[q] = stateTails.isEmpty() ? new ArrayList<S>() : stateTails.iterator().next();
+			}
+		}
+		moveBegin[stateCount] = moveCount;
+		if (!isDeterministic || !(ba instanceof UnaryCharIntervalSolver))
+			epsFree = null;
+	}
+
+	/**
+	 * @return a new run from the initial state
+	 */
+	public Run start() {
+		return new Run();
+	}
+
+	/**
+	 * @return one of the outputs produced when reading input, null if no such
+	 *         output exists
+	 * @throws TimeoutException
+	 */
+	public List<S> outputOn(List<S> input) throws TimeoutException {
+		Run run = start();
+		for (S symbol : input)
+			if (!run.feed(symbol))
+				return null;
+		if (!run.finish())
+			return null;
+		return run.takeOutput();
+	}
+
+	/**
+	 * Reads all of <code>in</code> in chunks and writes the output of
+	 * <code>runner</code> to <code>out</code> while reading. Reading stops as
+	 * soon as no move applies. Neither stream is closed.
+	 *
+	 * @return true iff the input is accepted
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public static <P, F> boolean transduce(SFTRunner<P, F, Character> runner, Readable in, Writer out)
+			throws IOException, TimeoutException {
+		CharSFTTable table = runner.getCharTable();
+		if (table != null)
+			return table.transduce(in, out);
+
+		SFTRunner<P, F, Character>.Run run = runner.start();
+		CharBuffer input = CharBuffer.allocate(CHUNK_SIZE);
+		char[] output = new char[CHUNK_SIZE];
+		boolean alive = true;
+		while (alive && in.read(input) >= 0) {
+			input.flip();
+			while (alive && input.hasRemaining())
+				alive = run.feed(input.get());
+			input.clear();
+			write(run.takeOutput(), output, out);
+		}
+		if (!alive)
+			return false;
+		boolean accepted = run.finish();
+		write(run.takeOutput(), output, out);
+		return accepted;
+	}
+
+	private static void write(List<Character> symbols, char[] buffer, Writer out) throws IOException {
+		int n = 0;
+		for (Character c : symbols) {
+			buffer[n++] = c;
+			if (n == buffer.length) {
+				out.write(buffer, 0, n);
+				n = 0;
+			}
+		}
+		out.write(buffer, 0, n);
+	}
+
+	/**
+	 * @return true iff the compiled SFT is deterministic
+	 */
+	public boolean isDeterministic() {
+		return isDeterministic;
+	}
+
+	/**
+	 * @return the table of the SFT, built on the first call, null unless it is
+	 *         a deterministic SFT over characters with constant and offset
+	 *         output functions
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized CharSFTTable getCharTable() {
+		if (epsFree != null) {
+			table = CharSFTTable.compileEpsilonFree((SFT<CharPred, CharFunc, Character>) epsFree);
+			epsFree = null;
+		}
+		return table;
+	}
+
+	/**
+	 * @return number of states of the compiled SFT
+	 */
+	public int stateCount() {
+		return stateCount;
+	}
+
+	// Output of the moves of a path that has not been written yet, shared by
+	// the paths that extend it
+	private static final class Pending<S> {
+		final Pending<S> prev;
+		final List<S> symbols;
+
+		Pending(Pending<S> prev, List<S> symbols) {
+			this.prev = prev;
+			this.symbols = symbols;
+		}
+	}
+
+	/**
+	 * A run of the SFT over an input fed one symbol at a time. The output
+	 * becomes available through {@link #takeOutput()} as soon as it is
+	 * written. A run must be used by one thread at a time.
+	 */
+	public class Run {
+
+		private final Deadline deadline = Deadline.current();
+
+		// current paths in exploration order, at most one per state
+		private int[] states = new int[stateCount];
+		private Pending<S>[] pending;
+		private int size;
+
+		private int[] nextStates = new int[stateCount];
+		private Pending<S>[] nextPending;
+
+		// states already reached by a path in the current step
+		private final int[] seen = new int[stateCount];
+		private int stamp;
+
+		private List<S> output = new ArrayList<S>();
+		private boolean finished;
+
+		@SuppressWarnings("unchecked")
+		private Run() {
+			pending = (Pending<S>[]) new Pending<?>[stateCount];
+			nextPending = (Pending<S>[]) new Pending<?>[stateCount];
+			states[0] = 0;
+			size = 1;
+		}
+
+		/**
+		 * Consumes <code>symbol</code>
+		 *
+		 * @return false iff no move applies, in which case the input is
+		 *         rejected whatever follows
+		 * @throws TimeoutException
+		 */
+		public boolean feed(S symbol) throws TimeoutException {
+			if (finished)
+				throw new IllegalStateException("The run is finished");
+			deadline.check();
+
+			if (isDeterministic) {
+				if (size == 0)
+					return false;
+				int q = states[0];
+				for (int i = moveBegin[q]; i < moveBegin[q + 1]; i++)
+					if (ba.HasModel(guards[i], symbol)) {
+						for (F f : outputFunctions[i])
+							output.add(ba.MkSubstFuncConst(f, symbol));
+						states[0] = targets[i];
+						return true;
+					}
+				size = 0;
+				return false;
+			}
+
+			stamp++;
+			int nextSize = 0;
+			for (int r = 0; r < size; r++) {
+				int q = states[r];
+				for (int i = moveBegin[q]; i < moveBegin[q + 1]; i++) {
+					int t = targets[i];
+					if (seen[t] != stamp && ba.HasModel(guards[i], symbol)) {
+						seen[t] = stamp;
+						nextStates[nextSize] = t;
+						nextPending[nextSize] = extend(pending[r], outputFunctions[i], symbol);
+						nextSize++;
+					}
+				}
+			}
+
+			int[] swapStates = states;
+			states = nextStates;
+			nextStates = swapStates;
+			Pending<S>[] swapPending = pending;
+			pending = nextPending;
+			nextPending = swapPending;
+			for (int r = 0; r < size; r++)
+				nextPending[r] = null;
+			size = nextSize;
+
+			if (size == 1) {
+				flush(pending[0]);
+				pending[0] = null;
+			}
+			return size > 0;
+		}
+
+		private Pending<S> extend(Pending<S> prev, F[] functions, S symbol) throws TimeoutException {
+			if (functions.length == 0)
+				return prev;
+			List<S> symbols = new ArrayList<S>(functions.length);
+			for (F f : functions)
+				symbols.add(ba.MkSubstFuncConst(f, symbol));
+			return new Pending<S>(prev, symbols);
+		}
+
+		private void flush(Pending<S> last) {
+			List<List<S>> chunks = new ArrayList<List<S>>();
+			for (Pending<S> p = last; p != null; p = p.prev)
+				chunks.add(p.symbols);
+			for (int i = chunks.size() - 1; i >= 0; i--)
+				output.addAll(chunks.get(i));
+		}
+
+		/**
+		 * Ends the input, writing the pending output and the tail of the
+		 * first accepting path
+		 *
+		 * @return true iff the input is accepted
+		 */
+		public boolean finish() {
+			if (finished)
+				throw new IllegalStateException("The run is finished");
+			finished = true;
+			for (int r = 0; r < size; r++) {
+				int q = states[r];
+				if (tails[q] != null) {
+					flush(pending[r]);
+					output.addAll(tails[q]);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return the output written since the last call
+		 */
+		public List<S> takeOutput() {
+			List<S> written = output;
+			output = new ArrayList<S>();
+			return written;
+		}
+
+		/**
+		 * @return number of paths kept by the run, at most one per state
+		 */
+		public int pathCount() {
+			return size;
+		}
+	}
+}
@@ -20,6 +20,7 @@ import org.sat4j.specs.TimeoutException;
 
 import theory.BooleanAlgebra;
 import theory.BooleanAlgebraSubst;
+import utilities.Deadline;
 import utilities.Pair;
 import automata.Automaton;
 import automata.Move;
@@ -278,8 +279,11 @@ public class SST<P, F, S> extends Automaton<P, S> {
 		reached.put(p, initialState);
 		toVisit.add(p);
 
+		Deadline deadline = Deadline.current();
 		// Combined has set of variables the disjoint union of the two sets
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, Integer> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 
@@ -355,8 +359,11 @@ public class SST<P, F, S> extends Automaton<P, S> {
 		reached.put(p, initialState);
 		toVisit.add(p);
 
+		Deadline deadline = Deadline.current();
 		// Combined has set of variables the disjoint union of the two sets
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, Integer> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 
@@ -830,8 +837,11 @@ public class SST<P, F, S> extends Automaton<P, S> {
 		numberOfVariables = accId + 1;
 
 		Collection<SSTMove<P1, F1, S1>> transitionFirstStretch = new ArrayList<SSTMove<P1, F1, S1>>();
+		Deadline deadline = Deadline.current();
 		// Start composing them
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			List<Integer> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 
@@ -1038,8 +1048,11 @@ public class SST<P, F, S> extends Automaton<P, S> {
 
 		Collection<SSTMove<P1, F1, S1>> transitionFirstStretch = new ArrayList<SSTMove<P1, F1, S1>>();
 		Collection<SSTMove<P1, F1, S1>> transitionOtherStretches = new ArrayList<SSTMove<P1, F1, S1>>();
+		Deadline deadline = Deadline.current();
 		// Start composing them
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			List<Integer> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 			idToState.put(currStateId, currState);
@@ -1373,8 +1386,11 @@ public class SST<P, F, S> extends Automaton<P, S> {
 		reached.put(initialStatePair, 0);
 		toVisit.add(initialStatePair);
 
+		Deadline deadline = Deadline.current();
 		// do a DFS and look for reachable states
 		while (!toVisit.isEmpty()) {
+			deadline.check();
+
 			Pair<Integer, HashMap<Integer, HashMap<Integer, Integer>>> currState = toVisit.removeFirst();
 			int currStateId = reached.get(currState);
 
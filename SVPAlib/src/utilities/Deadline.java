@@ -0,0 +1,135 @@
+package utilities;
+
+import java.util.concurrent.Callable;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A point in time after which an operation must stop, together with a
+ * cancellation flag that can be raised from any thread. Long-running algorithms
+ * call {@link #check()} in their inner loops, which is a volatile read and a
+ * clock read.
+ *
+ * Every thread has a current deadline, which never expires unless it was set
+ * with {@link #call(Callable)}. Deadlines created with {@link #after(long)} are
+ * children of the current one: they expire at the earliest of the two
+ * instants and are cancelled when the parent is.
+ */
+public final class Deadline {
+
+	/**
+	 * The deadline that never expires and cannot be cancelled
+	 */
+	public static final Deadline NONE = new Deadline(null, Long.MAX_VALUE);
+
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>() {
+		@Override
+		protected Deadline initialValue() {
+			return NONE;
+		}
+	};
+
+	private final Deadline parent;
+	// expiration time according to System.nanoTime, Long.MAX_VALUE for never
+	private final long expiresAt;
+	private volatile boolean cancelled;
+
+	private Deadline(Deadline parent, long expiresAt) {
+		this.parent = parent;
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * @return the current deadline of the thread
+	 */
+	public static Deadline current() {
+		return current.get();
+	}
+
+	/**
+	 * @return a child of the current deadline expiring within
+	 *         <code>timeout</code> milliseconds
+	 */
+	public static Deadline after(long timeout) {
+		return current().withTimeout(timeout);
+	}
+
+	/**
+	 * @return a child of this deadline expiring within <code>timeout</code>
+	 *         milliseconds
+	 */
+	public Deadline withTimeout(long timeout) {
+		long expires = Long.MAX_VALUE;
+		if (timeout < Long.MAX_VALUE / 1000000) {
+			long now = System.nanoTime();
+			expires = now + Math.max(timeout, 0) * 1000000;
+			// overflow of the clock
+			if (expires < now)
+				expires = Long.MAX_VALUE;
+		}
+		return new Deadline(this, Math.min(expires, expiresAt));
+	}
+
+	/**
+	 * Runs <code>task</code> with this deadline as the current one of the
+	 * thread, so that every operation it performs is bounded by it
+	 */
+	public <T> T call(Callable<T> task) throws Exception {
+		Deadline previous = current.get();
+		current.set(this);
+		try {
+			return task.call();
+		} finally {
+			current.set(previous);
+		}
+	}
+
+	/**
+	 * Cancels this deadline and all its children. Has no effect on
+	 * {@link #NONE}.
+	 */
+	public void cancel() {
+		if (this != NONE)
+			cancelled = true;
+	}
+
+	/**
+	 * @return true iff this deadline or one of its ancestors was cancelled
+	 */
+	public boolean isCancelled() {
+		for (Deadline d = this; d != null; d = d.parent)
+			if (d.cancelled)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return true iff the deadline passed or was cancelled
+	 */
+	public boolean isExpired() {
+		return isCancelled() || (expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt > 0);
+	}
+
+	/**
+	 * @return milliseconds left before the deadline, Long.MAX_VALUE if it
+	 *         never expires
+	 */
+	public long remaining() {
+		if (isCancelled())
+			return 0;
+		if (expiresAt == Long.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return Math.max(0, (expiresAt - System.nanoTime()) / 1000000);
+	}
+
+	/**
+	 * @throws TimeoutException
+	 *             if the deadline passed or was cancelled
+	 */
+	public void check() throws TimeoutException {
+		if (isCancelled())
+			throw new TimeoutException("Cancelled");
+		if (expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt > 0)
+			throw new TimeoutException("Timeout");
+	}
+}
@@ -0,0 +1,120 @@
+package utilities;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable set of non-negative integers stored as a bit vector. The hash
+ * code is computed once, which makes instances cheap keys for hash-consing
+ * subset states.
+ */
+public final class ImmutableBitSet {
+
+	private final long[] words;
+	private final int hash;
+
+	private ImmutableBitSet(long[] words) {
+		this.words = words;
+		this.hash = Arrays.hashCode(words);
+	}
+
+	/**
+	 * @return an immutable copy of <code>bits</code>
+	 */
+	public static ImmutableBitSet of(BitSet bits) {
+		return new ImmutableBitSet(bits.toLongArray());
+	}
+
+	/**
+	 * @return the set containing only <code>i</code>
+	 */
+	public static ImmutableBitSet of(int i) {
+		BitSet bits = new BitSet(i + 1);
+		bits.set(i);
+		return of(bits);
+	}
+
+	/**
+	 * @return true iff <code>i</code> belongs to the set
+	 */
+	public boolean get(int i) {
+		int w = i >>> 6;
+		return w < words.length && (words[w] & (1L << i)) != 0;
+	}
+
+	/**
+	 * @return the first element greater or equal than <code>from</code>, -1 if
+	 *         there is none
+	 */
+	public int nextSetBit(int from) {
+		int w = from >>> 6;
+		if (w >= words.length)
+			return -1;
+		long word = words[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+	}
+
+	/**
+	 * @return true iff the set shares an element with <code>bits</code>
+	 */
+	public boolean intersects(BitSet bits) {
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1))
+			if (bits.get(i))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return number of elements in the set
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return words.length == 0;
+	}
+
+	/**
+	 * @return number of 64-bit words used to store the set
+	 */
+	public int wordCount() {
+		return words.length;
+	}
+
+	/**
+	 * @return a mutable copy of the set
+	 */
+	public BitSet toBitSet() {
+		return BitSet.valueOf(words);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof ImmutableBitSet))
+			return false;
+		ImmutableBitSet o = (ImmutableBitSet) other;
+		return hash == o.hash && Arrays.equals(words, o.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return toBitSet().toString();
+	}
+}
@@ -0,0 +1,104 @@
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to non-negative int
+ * values. Used to index product states without boxing.
+ */
+public class LongIntMap {
+
+	private static final int EMPTY = -1;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int threshold;
+
+	public LongIntMap() {
+		this(16);
+	}
+
+	public LongIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, EMPTY);
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * @return the value associated with <code>key</code>, -1 if there is none
+	 */
+	public int get(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (values[i] == EMPTY)
+				return EMPTY;
+			if (keys[i] == key)
+				return values[i];
+		}
+	}
+
+	/**
+	 * Associates <code>value</code> (non-negative) with <code>key</code>
+	 */
+	public void put(long key, int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Values must be non-negative");
+
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (values[i] == EMPTY) {
+				keys[i] = key;
+				values[i] = value;
+				if (++size > threshold)
+					rehash();
+				return;
+			}
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true iff <code>key</code> is in the map
+	 */
+	public boolean containsKey(long key) {
+		return get(key) != EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length << 1);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldValues[i] != EMPTY)
+				put(oldKeys[i], oldValues[i]);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return a key combining the two ints <code>first</code> and
+	 *         <code>second</code>
+	 */
+	public static long pairKey(int first, int second) {
+		return ((long) first << 32) | (second & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,190 @@
+package utilities;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * Counters and timers of a single operation. Every thread has its own current
+ * metrics: an instrumented operation calls {@link #begin(String)} to get fresh
+ * metrics, records its costs in them and calls {@link #end()} when it
+ * completes, which passes them to the registered listeners. The metrics of the
+ * last operation stay current until the thread begins a new one.
+ */
+public final class Metrics {
+
+	public enum Timer {
+		FULL, SOLVER, SUBSUMPTION
+	}
+
+	public enum Counter {
+		EXPLORED_STATES, SUCCESSFUL_SUBSUMPTIONS, MINTERMS
+	}
+
+	private static final ThreadLocal<Metrics> current = new ThreadLocal<Metrics>() {
+		@Override
+		protected Metrics initialValue() {
+			return new Metrics("none");
+		}
+	};
+
+	private static final List<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+
+	private final String operation;
+	private final long[] startTime = new long[Timer.values().length];
+	private final long[] total = new long[Timer.values().length];
+	private final boolean[] isRunning = new boolean[Timer.values().length];
+	private final long[] counters = new long[Counter.values().length];
+	private long timeout = Long.MAX_VALUE;
+
+	private Metrics(String operation) {
+		this.operation = operation;
+	}
+
+	// ------------------------------------------------------
+	// Scoping
+	// ------------------------------------------------------
+
+	/**
+	 * @return the metrics of the operation running (or that last ran) on the
+	 *         current thread
+	 */
+	public static Metrics current() {
+		return current.get();
+	}
+
+	/**
+	 * Makes fresh metrics for <code>operation</code> the current ones of the
+	 * thread
+	 */
+	public static Metrics begin(String operation) {
+		Metrics metrics = new Metrics(operation);
+		current.set(metrics);
+		return metrics;
+	}
+
+	/**
+	 * Stops the running timers, makes these metrics the current ones of the
+	 * thread and passes them to the listeners
+	 */
+	public void end() {
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < isRunning.length; i++)
+			if (isRunning[i]) {
+				total[i] += now - startTime[i];
+				isRunning[i] = false;
+			}
+		current.set(this);
+		for (MetricsListener listener : listeners)
+			listener.operationCompleted(this);
+	}
+
+	public static void addListener(MetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(MetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	// ------------------------------------------------------
+	// Timers
+	// ------------------------------------------------------
+
+	public void start(Timer timer) {
+		startTime[timer.ordinal()] = System.currentTimeMillis();
+		isRunning[timer.ordinal()] = true;
+	}
+
+	public void stop(Timer timer) {
+		total[timer.ordinal()] += System.currentTimeMillis() - startTime[timer.ordinal()];
+		isRunning[timer.ordinal()] = false;
+	}
+
+	/**
+	 * @return milliseconds measured by <code>timer</code>, including the
+	 *         current run if the timer is running
+	 */
+	public long getTime(Timer timer) {
+		long time = total[timer.ordinal()];
+		if (isRunning[timer.ordinal()])
+			time += System.currentTimeMillis() - startTime[timer.ordinal()];
+		return time;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return true iff the full timer measured more than the timeout
+	 */
+	public boolean isTimedOut() {
+		return getTime(Timer.FULL) > timeout;
+	}
+
+	/**
+	 * @throws TimeoutException
+	 *             if the full timer measured more than the timeout
+	 */
+	public void assertNotTimedOut() throws TimeoutException {
+		if (isTimedOut())
+			throw new TimeoutException("Timeout");
+	}
+
+	// ------------------------------------------------------
+	// Counters
+	// ------------------------------------------------------
+
+	public void increment(Counter counter) {
+		counters[counter.ordinal()]++;
+	}
+
+	public void add(Counter counter, long n) {
+		counters[counter.ordinal()] += n;
+	}
+
+	public long getCount(Counter counter) {
+		return counters[counter.ordinal()];
+	}
+
+	// ------------------------------------------------------
+	// Export
+	// ------------------------------------------------------
+
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the times of the timers
+	 */
+	public Map<Timer, Long> getTimes() {
+		Map<Timer, Long> times = new EnumMap<Timer, Long>(Timer.class);
+		for (Timer timer : Timer.values())
+			times.put(timer, getTime(timer));
+		return times;
+	}
+
+	/**
+	 * @return the values of the counters
+	 */
+	public Map<Counter, Long> getCounts() {
+		Map<Counter, Long> counts = new EnumMap<Counter, Long>(Counter.class);
+		for (Counter counter : Counter.values())
+			counts.put(counter, getCount(counter));
+		return counts;
+	}
+
+	@Override
+	public String toString() {
+		return operation + ": " + getTimes() + " " + getCounts();
+	}
+}
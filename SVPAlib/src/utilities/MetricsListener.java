@@ -0,0 +1,13 @@
+package utilities;
+
+/**
+ * Receives the metrics of every instrumented operation when it completes
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called by the thread that ran the operation. <code>metrics</code> must
+	 * not be modified.
+	 */
+	void operationCompleted(Metrics metrics);
+}
@@ -2,132 +2,101 @@ package utilities;
 
 import org.sat4j.specs.TimeoutException;
 
+import utilities.Metrics.Counter;
+import utilities.Metrics.Timer;
+
+/**
+ * Static access to the timers and counters of the current thread, see
+ * {@link Metrics}
+ */
 public class Timers {
 			
 	private Timers() {
 	}
 
-	private static long timeout = Long.MAX_VALUE;
-	private static long[] startTime = new long[3];
-	private static long[] total = new long[3];
-	private static boolean[] isRunning = new boolean[3];
-	public static int exploredStates;
-	public static int successfulSubs;
-	
-	
-	public static void setNumberOfTimers(int n) {
-		startTime = new long[n];
-		total = new long[n];
-		isRunning = new boolean[n];
-		for (int i = 0; i < n; i++) {
-			total[i] = 0;
-			isRunning[i] = false;
-		}
-		exploredStates=0;
-		successfulSubs=0;
+	public static int getExploredStates() {
+		return (int) Metrics.current().getCount(Counter.EXPLORED_STATES);
+	}
+
+	public static int getSuccessfulSubs() {
+		return (int) Metrics.current().getCount(Counter.SUCCESSFUL_SUBSUMPTIONS);
 	}
 	
 	public static void oneMoreState(){
-		exploredStates++;
+		Metrics.current().increment(Counter.EXPLORED_STATES);
 	}
 	
 	public static void oneMoreSub(){
-		successfulSubs++;
+		Metrics.current().increment(Counter.SUCCESSFUL_SUBSUMPTIONS);
 	}
 	
 	public static void setTimeout(long to){
-		timeout = to;
+		Metrics.current().setTimeout(to);
 	}
 
 	public static void resetAll() {
-		setNumberOfTimers(startTime.length);
-	}
-
-	public static void reset(int i) {
-		total[i] = 0;
-		isRunning[i] = false;
+		Metrics.begin("timers");
 	}
 
 	public static void start(int i) {
-//		if (isRunning[i])
-//			throw new IllegalArgumentException("Timer was still running");
-
-		startTime[i] = System.currentTimeMillis();
-		isRunning[i] = true;
+		Metrics.current().start(Timer.values()[i]);
 	}
 
 	public static void stop(int i) {
-//		if (!isRunning[i])
-//			throw new IllegalArgumentException("Timer was not running");
-		
-		total[i] += System.currentTimeMillis() - startTime[i];
-		isRunning[i] = false;
+		Metrics.current().stop(Timer.values()[i]);
 	}
 	
 	public static long getValue(int i) {
-//		if (isRunning[i])
-//			throw new IllegalArgumentException("Timer was still running");
-		
-		return total[i];
+		return Metrics.current().getTime(Timer.values()[i]);
 	}
 	
 	//For congruence
-	private static final int full = 0;
-	private static final int solver = 1;
-	private static final int subsumption = 2;
-	
 	public static void setForCongruence(){
-		setNumberOfTimers(3);
+		resetAll();
 	}
 	
 	public static void startSolver() {
-		start(solver);
+		Metrics.current().start(Timer.SOLVER);
 	}
 	
 	public static void stopSolver() {
-		stop(solver);
+		Metrics.current().stop(Timer.SOLVER);
 	}
 	
 	public static long getSolver() {
-		return getValue(solver);
+		return Metrics.current().getTime(Timer.SOLVER);
 	}
 
 	public static void startFull() {
-		start(full);
+		Metrics.current().start(Timer.FULL);
 	}
 	
 	public static void stopFull() {
-		stop(full);
+		Metrics.current().stop(Timer.FULL);
 	}
 	
 	public static long getFull() {	
-		return getValue(full);
+		return Metrics.current().getTime(Timer.FULL);
 	}
 	
 	public static void startSubsumption() {
-		start(subsumption);
+		Metrics.current().start(Timer.SUBSUMPTION);
 	}
 	
 	public static void stopSubsumption() {
-		stop(subsumption);
+		Metrics.current().stop(Timer.SUBSUMPTION);
 	}
 	
 	public static long getSubsumption() {
-		return getValue(subsumption);
+		return Metrics.current().getTime(Timer.SUBSUMPTION);
 	}
 	
 	public static boolean fullTO(){
-		long tmp = total[full];
-		if(isRunning[full])
-			tmp += System.currentTimeMillis() - startTime[full];
-		return tmp>timeout;
+		return Metrics.current().isTimedOut();
 	}
 
 	public static boolean fullTO(long timeout){
-		long tmp = total[full];
-		if(isRunning[full])
-			tmp += System.currentTimeMillis() - startTime[full];
-		return tmp>timeout;
+		return Metrics.current().getTime(Timer.FULL) > timeout;
 	}
 	
 	public static void assertFullTO(long to) throws TimeoutException{
@@ -136,8 +105,7 @@ public class Timers {
 	}
 	
 	public static void assertFullTO() throws TimeoutException{
-		if(fullTO())
-			throw new TimeoutException("Timeout");
+		Metrics.current().assertNotTimedOut();
 	}
 	
 }
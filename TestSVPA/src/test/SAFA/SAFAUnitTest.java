@@ -8,15 +8,25 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
+import org.sat4j.minisat.SolverFactory;
 import org.sat4j.specs.TimeoutException;
 
+import automata.EquivalenceBatch;
+import automata.EquivalenceBatch.Outcome;
+import automata.EquivalenceBatch.Result;
 import automata.safa.BooleanExpressionFactory;
 import automata.safa.SAFA;
 import automata.safa.SAFAInputMove;
 import automata.safa.SATRelation;
 import automata.safa.booleanexpression.PositiveBooleanExpression;
+import automata.safa.booleanexpression.PositiveBooleanExpressionFactory;
+import automata.safa.booleanexpression.PositiveOr;
+import automata.safa.booleanexpression.PositiveTrue;
 import automata.safa.booleanexpression.SumOfProducts;
 import automata.safa.booleanexpression.SumOfProductsFactory;
 import theory.BooleanAlgebra;
@@ -24,6 +34,7 @@ import theory.characters.CharPred;
 import theory.characters.StdCharPred;
 import theory.intervals.UnaryCharIntervalSolver;
 import theory.safa.SAFABooleanAlgebra;
+import utilities.Pair;
 
 public class SAFAUnitTest {
 	@Test
@@ -199,6 +210,153 @@ public class SAFAUnitTest {
 		assertTrue(SAFA.isEquivalent(intersection1, intersection2, ba, pos).first);
 	}
 
+	@Test
+	public void testBooleanExpressionFactory() throws Exception {
+		BooleanExpressionFactory<PositiveBooleanExpression> shared = SAFA.getBooleanExpressionFactory();
+		PositiveBooleanExpressionFactory session = new PositiveBooleanExpressionFactory();
+
+		// expressions are hash-consed across threads
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<PositiveBooleanExpression>> results = new ArrayList<Future<PositiveBooleanExpression>>();
+		for (int i = 0; i < 8; i++)
+			results.add(executor.submit(() -> session.MkAnd(session.MkState(1), session.MkOr(session.MkState(2),
+					session.MkState(3)))));
+		for (Future<PositiveBooleanExpression> result : results)
+			assertTrue(result.get() == results.get(0).get());
+		executor.shutdown();
+
+		// a thread can build its SAFAs with its own factory
+		SAFA.setBooleanExpressionFactory(session);
+		try {
+			assertTrue(SAFA.getBooleanExpressionFactory() == session);
+			SAFA<CharPred, Character> intersection = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+			assertTrue(intersection.accepts(lab, ba));
+			assertFalse(intersection.accepts(la, ba));
+		} finally {
+			SAFA.setBooleanExpressionFactory(null);
+		}
+		assertTrue(SAFA.getBooleanExpressionFactory() == shared);
+	}
+
+	@Test
+	public void testEquivalenceBatchFactory() throws Exception {
+		PositiveBooleanExpressionFactory session = new PositiveBooleanExpressionFactory();
+		SAFA.setBooleanExpressionFactory(session);
+		try {
+			SAFA<CharPred, Character> intersection1 = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+			SAFA<CharPred, Character> intersection2 = atLeastOneNum.intersectionWith(atLeastOneAlpha, ba);
+			List<Pair<SAFA<CharPred, Character>, SAFA<CharPred, Character>>> pairs = new ArrayList<>();
+			pairs.add(new Pair<>(intersection1, intersection2));
+			pairs.add(new Pair<>(intersection1, atLeastOneAlpha));
+
+			// the workers run the checks with the factory of the submitting thread
+			EquivalenceBatch<SAFA<CharPred, Character>, Character> batch = new EquivalenceBatch<>(
+					EquivalenceBatch.safa(ba, SumOfProductsFactory.getInstance()), 2, Long.MAX_VALUE);
+			for (Result<Character> result : batch.submit(pairs))
+				assertTrue(result.outcome == (result.index == 0 ? Outcome.EQUIVALENT : Outcome.NOT_EQUIVALENT));
+			batch.shutdown();
+
+			List<BooleanExpressionFactory<PositiveBooleanExpression>> factories = new ArrayList<>();
+			EquivalenceBatch<SAFA<CharPred, Character>, Character> recording = new EquivalenceBatch<>(
+					(left, right, timeout) -> {
+						synchronized (factories) {
+							factories.add(SAFA.getBooleanExpressionFactory());
+						}
+						return new Pair<Boolean, List<Character>>(true, null);
+					}, 2, Long.MAX_VALUE);
+			for (Result<Character> result : recording.submit(pairs))
+				assertTrue(result.outcome == Outcome.EQUIVALENT);
+			recording.shutdown();
+			assertTrue(factories.size() == pairs.size());
+			for (BooleanExpressionFactory<PositiveBooleanExpression> factory : factories)
+				assertTrue(factory == session);
+		} finally {
+			SAFA.setBooleanExpressionFactory(null);
+		}
+	}
+
+	@Test
+	public void testMovesToConfiguration() throws TimeoutException {
+		SAFA<CharPred, Character> aut = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba).negate(ba);
+		List<List<Integer>> configurations = new ArrayList<List<Integer>>();
+		configurations.add(new ArrayList<Integer>());
+		for (Integer state : aut.getStates()) {
+			List<Integer> conf = new ArrayList<Integer>(configurations.get(configurations.size() - 1));
+			conf.add(state);
+			configurations.add(conf);
+			configurations.add(Arrays.asList(state));
+		}
+
+		for (List<Integer> conf : configurations) {
+			List<SAFAInputMove<CharPred, Character>> expected = new ArrayList<SAFAInputMove<CharPred, Character>>();
+			for (SAFAInputMove<CharPred, Character> t : aut.getInputMoves())
+				if (t.to.hasModel(conf))
+					expected.add(t);
+			assertTrue(aut.getMovesToConfiguration(conf).equals(expected));
+		}
+		assertTrue(SAFA.areReverseEquivalent(aut, aut.negate(ba).negate(ba), ba));
+
+		// a target mentioning a state can hold in every configuration
+		Collection<SAFAInputMove<CharPred, Character>> transitions = new LinkedList<>();
+		transitions.add(new SAFAInputMove<CharPred, Character>(0,
+				new PositiveOr(PositiveTrue.getInstance(), boolexpr.MkState(1)), a));
+		transitions.add(new SAFAInputMove<CharPred, Character>(0, boolexpr.MkState(1), num));
+		transitions.add(new SAFAInputMove<CharPred, Character>(1, boolexpr.MkState(1), num));
+		SAFA<CharPred, Character> orTrue = SAFA.MkSAFA(transitions, boolexpr.MkState(0), Arrays.asList(1), ba,
+				false, false, false);
+		for (List<Integer> conf : Arrays.asList(new ArrayList<Integer>(), Arrays.asList(0), Arrays.asList(1))) {
+			List<SAFAInputMove<CharPred, Character>> expected = new ArrayList<SAFAInputMove<CharPred, Character>>();
+			for (SAFAInputMove<CharPred, Character> t : orTrue.getInputMoves())
+				if (t.to.hasModel(conf))
+					expected.add(t);
+			assertFalse(expected.isEmpty());
+			assertTrue(orTrue.getMovesToConfiguration(conf).equals(expected));
+		}
+	}
+
+	@Test
+	public void testSharedRelation() throws TimeoutException {
+		BooleanExpressionFactory<SumOfProducts> pos = SumOfProductsFactory.getInstance();
+		SAFA<CharPred, Character> intersection1 = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+		SAFA<CharPred, Character> intersection2 = atLeastOneNum.intersectionWith(atLeastOneAlpha, ba);
+		List<SAFA<CharPred, Character>> auts = Arrays.asList(atLeastOneAlpha, atLeastOneNum, intersection1,
+				intersection2);
+
+		SATRelation relation = new SATRelation();
+		for (int round = 0; round < 2; round++)
+			for (SAFA<CharPred, Character> left : auts)
+				for (SAFA<CharPred, Character> right : auts)
+					assertTrue(SAFA.isEquivalent(left, right, ba, pos, relation, Long.MAX_VALUE).first == SAFA
+							.isEquivalent(left, right, ba, pos).first);
+		assertTrue(relation.getQueries() > 0);
+	}
+
+	@Test
+	public void testSharedRelationBound() throws TimeoutException {
+		BooleanExpressionFactory<SumOfProducts> pos = SumOfProductsFactory.getInstance();
+		SAFA<CharPred, Character> intersection1 = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
+		SAFA<CharPred, Character> intersection2 = atLeastOneNum.intersectionWith(atLeastOneAlpha, ba);
+
+		int bound = 8;
+		SATRelation relation = new SATRelation(SolverFactory.newDefault(), bound);
+		int rebuilds = 0;
+		for (int round = 0; round < 10; round++) {
+			assertTrue(SAFA.isEquivalent(intersection1, intersection2, ba, pos, relation, Long.MAX_VALUE).first);
+			assertFalse(SAFA.isEquivalent(intersection1, atLeastOneAlpha, ba, pos, relation, Long.MAX_VALUE).first);
+
+			boolean overBound = relation.getLiteralCount() > bound || relation.getCachedEncodings() > bound;
+			relation.reset();
+			if (overBound) {
+				// only the activation literal of the new relation is left
+				assertTrue(relation.getLiteralCount() == 1);
+				assertTrue(relation.getCachedEncodings() == 0);
+				rebuilds++;
+			}
+			assertTrue(relation.getLiteralCount() <= bound + 1);
+		}
+		assertTrue(rebuilds > 0);
+	}
+
 	@Test
 	public void testNegate() throws TimeoutException {
 		SAFA<CharPred, Character> a = atLeastOneAlpha.intersectionWith(atLeastOneNum, ba);
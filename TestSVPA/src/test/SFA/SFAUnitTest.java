@@ -6,21 +6,42 @@ import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.sat4j.specs.TimeoutException;
 
+import automata.EquivalenceBatch;
+import automata.EquivalenceBatch.Outcome;
+import automata.EquivalenceBatch.Result;
+import automata.sfa.BudgetExceededException;
+import automata.sfa.CompactSFA;
+import automata.sfa.CompiledCharSFA;
+import automata.sfa.DeterminizationBudget;
+import automata.sfa.DeterminizationBudget.Resource;
+import automata.sfa.LazyDeterministicSFA;
 import automata.sfa.SFA;
 import automata.sfa.SFAEpsilon;
 import automata.sfa.SFAInputMove;
+import automata.sfa.SFAMinimizer;
 import automata.sfa.SFAMove;
+import theory.MintermCache;
 import theory.characters.CharPred;
 import theory.characters.StdCharPred;
 import theory.intervals.UnaryCharIntervalSolver;
+import utilities.Deadline;
+import utilities.Metrics;
+import utilities.Metrics.Counter;
+import utilities.MetricsListener;
 import utilities.Pair;
+import utilities.Timers;
 
 public class SFAUnitTest {
 
@@ -130,6 +151,38 @@ public class SFAUnitTest {
 
 	}
 
+	@Test
+	public void testParallelIntersection() throws TimeoutException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		SFA<CharPred, Character> autBA = autB.unionWith(autA, ba);
+		for (SFA<CharPred, Character> aut : Arrays.asList(autA, autB, autBA)) {
+			SFA<CharPred, Character> seq = SFA.intersection(autBA, aut, ba, Long.MAX_VALUE);
+			SFA<CharPred, Character> par = SFA.parallelIntersection(autBA, aut, ba, pool, Long.MAX_VALUE);
+
+			// same numbering of the states
+			assertTrue(par.getInitialState().equals(seq.getInitialState()));
+			assertTrue(new HashSet<Integer>(par.getFinalStates()).equals(new HashSet<Integer>(seq.getFinalStates())));
+			assertTrue(sortedMoves(par).equals(sortedMoves(seq)));
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testIntersectionIsEmpty() throws TimeoutException {
+		SFA<CharPred, Character> autBA = autB.unionWith(autA, ba);
+
+		Pair<Boolean, List<Character>> res = SFA.intersectionIsEmpty(Arrays.asList(autA, autB, autBA), ba,
+				Long.MAX_VALUE);
+		assertFalse(res.first);
+		assertTrue(autA.accepts(res.second, ba));
+		assertTrue(autB.accepts(res.second, ba));
+		assertTrue(autBA.accepts(res.second, ba));
+
+		SFA<CharPred, Character> notA = autA.complement(ba);
+		assertTrue(SFA.intersectionIsEmpty(Arrays.asList(autBA, autA, notA), ba, Long.MAX_VALUE).first);
+		assertFalse(SFA.intersectionIsEmpty(Arrays.asList(autBA, notA), ba, Long.MAX_VALUE).first);
+	}
+
 	@Test
 	public void testMinimization() throws TimeoutException {
 		SFA<CharPred, Character> autM = getSFAtoMin2(ba);
@@ -146,6 +199,70 @@ public class SFAUnitTest {
 		assertTrue(min.isEquivalentTo(autM, ba));
 	}
 
+	@Test
+	public void testMinimizer() throws TimeoutException {
+		// a chain of 40 states where only the length modulo 4 matters
+		List<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+		List<Integer> finals = new LinkedList<Integer>();
+		for (int i = 0; i < 40; i++) {
+			transitions.add(new SFAInputMove<CharPred, Character>(i, (i + 1) % 40, alpha));
+			transitions.add(new SFAInputMove<CharPred, Character>(i, (i + 2) % 40, num));
+			if (i % 4 == 0)
+				finals.add(i);
+		}
+		SFA<CharPred, Character> mod = SFA.MkSFA(transitions, 0, finals, ba);
+
+		List<SFA<CharPred, Character>> auts = Arrays.asList(getSFAtoMin2(ba), autA, autB, autA.complement(ba),
+				autA.intersectionWith(autB, ba), mod);
+		for (SFA<CharPred, Character> aut : auts) {
+			SFAMinimizer<CharPred, Character> minimizer = new SFAMinimizer<>(ba);
+			SFA<CharPred, Character> min = minimizer.minimize(aut, Long.MAX_VALUE);
+			SFA<CharPred, Character> ref = SFA.getMinimalOfWithBlocks(aut, ba, Long.MAX_VALUE);
+			assertTrue(min.stateCount() == ref.stateCount());
+			assertTrue(min.getInitialState().equals(ref.getInitialState()));
+			assertTrue(new HashSet<>(min.getFinalStates()).equals(new HashSet<>(ref.getFinalStates())));
+			assertTrue(sortedMoves(min).equals(sortedMoves(ref)));
+			assertTrue(min.isEquivalentTo(aut, ba));
+		}
+
+		SFAMinimizer<CharPred, Character> minimizer = new SFAMinimizer<>(ba);
+		// four residues and the sink added to make the SFA total, every split
+		// adds one block to the final/non-final partition
+		assertTrue(minimizer.minimize(mod, Long.MAX_VALUE).stateCount() == 5);
+		assertTrue(minimizer.getSplits() == 3);
+		assertTrue(minimizer.getSplitters() >= minimizer.getSplits());
+	}
+
+	@Test
+	public void testReduction() throws TimeoutException {
+		// two copies of ab after a nondeterministic choice
+		CharPred b = new CharPred('b');
+		List<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 1, a));
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 2, a));
+		transitions.add(new SFAInputMove<CharPred, Character>(1, 3, b));
+		transitions.add(new SFAInputMove<CharPred, Character>(2, 4, b));
+		transitions.add(new SFAInputMove<CharPred, Character>(3, 3, alpha));
+		transitions.add(new SFAInputMove<CharPred, Character>(4, 4, ba.MkOr(a, alpha)));
+		SFA<CharPred, Character> nfa = SFA.MkSFA(transitions, 0, Arrays.asList(3, 4), ba);
+
+		SFA<CharPred, Character> bisim = nfa.reduceByBisimulation(ba);
+		SFA<CharPred, Character> sim = nfa.reduceBySimulation(ba);
+		assertTrue(bisim.stateCount() == 3);
+		assertTrue(sim.stateCount() == 3);
+		assertTrue(bisim.isEquivalentTo(nfa, ba));
+		assertTrue(sim.isEquivalentTo(nfa, ba));
+
+		for (SFA<CharPred, Character> aut : Arrays.asList(autA, autB, getSFAtoMin2(ba))) {
+			bisim = aut.reduceByBisimulation(ba);
+			sim = aut.reduceBySimulation(ba);
+			assertTrue(sim.stateCount() <= bisim.stateCount());
+			assertTrue(bisim.stateCount() <= aut.stateCount());
+			assertTrue(bisim.isEquivalentTo(aut, ba));
+			assertTrue(sim.isEquivalentTo(aut, ba));
+		}
+	}
+
 	@Test
 	public void testDeterminization() throws TimeoutException {
 		SFA<CharPred, Character> detAutA = autA.determinize(ba);
@@ -155,6 +272,43 @@ public class SFAUnitTest {
 		assertFalse(autA.isDeterministic(ba));
 	}
 
+	@Test
+	public void testDeterminizationOfNFA() throws TimeoutException {
+		// [a-z]*a[a-z] with initial state different from 0
+		Collection<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+		transitions.add(new SFAInputMove<CharPred, Character>(3, 3, alpha));
+		transitions.add(new SFAInputMove<CharPred, Character>(3, 4, a));
+		transitions.add(new SFAInputMove<CharPred, Character>(4, 5, alpha));
+		SFA<CharPred, Character> nfa = SFA.MkSFA(transitions, 3, Arrays.asList(5), ba);
+
+		SFA<CharPred, Character> dfa = nfa.determinize(ba);
+
+		assertFalse(nfa.isDeterministic(ba));
+		assertTrue(dfa.isDeterministic(ba));
+		assertTrue(dfa.accepts(lOfS("bab"), ba));
+		assertTrue(dfa.accepts(lOfS("aa"), ba));
+		assertFalse(dfa.accepts(lOfS("aba"), ba));
+		assertTrue(dfa.isEquivalentTo(nfa, ba));
+	}
+
+	@Test
+	public void testMintermCache() throws TimeoutException {
+		UnaryCharIntervalSolver cachedBa = new UnaryCharIntervalSolver();
+		MintermCache<CharPred> cache = new MintermCache<CharPred>();
+		cachedBa.setMintermCache(cache);
+
+		SFA<CharPred, Character> det1 = autA.determinize(cachedBa);
+		long lookups = cache.getLookups();
+		SFA<CharPred, Character> det2 = autA.determinize(cachedBa);
+
+		assertTrue(lookups > 0);
+		assertTrue(cache.getLookups() == 2 * lookups);
+		assertTrue(cache.getHits() >= lookups);
+		assertTrue(det1.isEquivalentTo(autA, ba));
+		assertTrue(det2.isEquivalentTo(det1, ba));
+		assertTrue(autA.isHopcroftKarpEquivalentTo(autA.complement(cachedBa).complement(cachedBa), cachedBa));
+	}
+
 	@Test
 	public void testMkTotal() throws TimeoutException {
 		SFA<CharPred, Character> autcSfa = getSFAc(ba);
@@ -262,6 +416,183 @@ public class SFAUnitTest {
 		
 	}
 	
+	@Test
+	public void testMetrics() throws Exception {
+		List<Metrics> completed = Collections.synchronizedList(new ArrayList<Metrics>());
+		MetricsListener listener = completed::add;
+		Metrics.addListener(listener);
+		try {
+			SFA<CharPred, Character> ccB = autB.complement(ba).complement(ba);
+
+			// every thread records the metrics of its own operations
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			List<Future<Integer>> explored = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 4; i++)
+				explored.add(executor.submit(() -> {
+					assertTrue(autB.isHopcroftKarpEquivalentTo(ccB, ba));
+					return Timers.getExploredStates();
+				}));
+			for (Future<Integer> states : explored)
+				assertTrue(states.get().equals(explored.get(0).get()) && states.get() > 0);
+			executor.shutdown();
+
+			assertTrue(completed.size() == 4);
+			for (Metrics metrics : completed) {
+				assertTrue(metrics.getOperation().equals("SFA.areHKEquivalentNondet"));
+				assertTrue(metrics.getCount(Counter.EXPLORED_STATES) == explored.get(0).get());
+				assertTrue(metrics.getCount(Counter.MINTERMS) > 0);
+			}
+		} finally {
+			Metrics.removeListener(listener);
+		}
+	}
+
+	@Test
+	public void testEquivalenceBatch() throws Exception {
+		SFA<CharPred, Character> ccA = autA.complement(ba).complement(ba);
+		SFA<CharPred, Character> ccB = autB.complement(ba).complement(ba);
+		List<Pair<SFA<CharPred, Character>, SFA<CharPred, Character>>> pairs = new ArrayList<>();
+		pairs.add(new Pair<>(autA, ccA));
+		pairs.add(new Pair<>(autA, autB));
+		pairs.add(new Pair<>(autB, ccB));
+		pairs.add(new Pair<>(ccA, ccB));
+
+		EquivalenceBatch<SFA<CharPred, Character>, Character> batch = new EquivalenceBatch<>(
+				EquivalenceBatch.sfaWithWitness(ba), 2, Long.MAX_VALUE);
+		boolean[] seen = new boolean[pairs.size()];
+		for (Result<Character> result : batch.submit(pairs)) {
+			seen[result.index] = true;
+			SFA<CharPred, Character> left = pairs.get(result.index).first;
+			SFA<CharPred, Character> right = pairs.get(result.index).second;
+			if (result.index % 2 == 0)
+				assertTrue(result.outcome == Outcome.EQUIVALENT);
+			else {
+				assertTrue(result.outcome == Outcome.NOT_EQUIVALENT);
+				assertTrue(left.accepts(result.witness, ba) != right.accepts(result.witness, ba));
+			}
+		}
+		for (boolean s : seen)
+			assertTrue(s);
+
+		// checks that run out of time are reported
+		EquivalenceBatch<SFA<CharPred, Character>, Character> slow = new EquivalenceBatch<>(
+				(l, r, timeout) -> {
+					throw new TimeoutException();
+				}, 1, 0);
+		for (Result<Character> result : slow.submit(pairs))
+			assertTrue(result.outcome == Outcome.TIMEOUT);
+
+		batch.shutdown();
+		slow.shutdown();
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		SFA<CharPred, Character> min = autA.minimize(ba, Long.MAX_VALUE);
+		assertTrue(min.isEquivalentTo(autA.minimize(ba), ba));
+
+		// a cancelled deadline stops every operation run under it
+		Deadline cancelled = Deadline.after(Long.MAX_VALUE);
+		cancelled.cancel();
+		assertTrue(cancelled.isExpired());
+		try {
+			cancelled.call(() -> autA.intersectionWith(autB, ba, Long.MAX_VALUE));
+			assertTrue(false);
+		} catch (TimeoutException e) {
+		}
+		try {
+			cancelled.call(() -> ba.GetMinterms(new ArrayList<>(Arrays.asList(alpha, num))));
+			assertTrue(false);
+		} catch (TimeoutException e) {
+		}
+		// the deadline of the thread is restored
+		assertFalse(Deadline.current().isExpired());
+		assertTrue(autA.intersectionWith(autB, ba, Long.MAX_VALUE) != null);
+
+		// cancelling a batch stops the checks that are running
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		EquivalenceBatch<SFA<CharPred, Character>, Character> batch = new EquivalenceBatch<>((l, r, timeout) -> {
+			while (true)
+				Deadline.current().check();
+		}, executor, Long.MAX_VALUE);
+		EquivalenceBatch<SFA<CharPred, Character>, Character>.Batch run = batch
+				.submit(Arrays.asList(new Pair<>(autA, autB)));
+		run.cancel();
+		assertTrue(run.take().outcome == Outcome.CANCELLED);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDeterminizationBudget() throws TimeoutException {
+		// the n-th symbol from the end is an a, needs 2^n deterministic states
+		int n = 6;
+		List<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 0, ba.True()));
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 1, new CharPred('a')));
+		for (int i = 1; i < n; i++)
+			transitions.add(new SFAInputMove<CharPred, Character>(i, i + 1, ba.True()));
+		SFA<CharPred, Character> nfa = SFA.MkSFA(transitions, 0, Arrays.asList(n), ba);
+
+		SFA<CharPred, Character> dfa = nfa.determinize(ba, DeterminizationBudget.UNLIMITED, Long.MAX_VALUE);
+		assertTrue(dfa.stateCount() == 1 << n);
+		assertTrue(dfa.isEquivalentTo(nfa, ba));
+
+		try {
+			nfa.determinize(ba, DeterminizationBudget.ofStates(10), Long.MAX_VALUE);
+			assertTrue(false);
+		} catch (BudgetExceededException e) {
+			assertTrue(e.getResource() == Resource.STATES);
+			assertTrue(e.getDiscoveredStates() == 11);
+			assertTrue(e.getExploredStates() < e.getDiscoveredStates());
+			assertTrue(e.getTransitions() > 0 && e.getEstimatedBytes() > 0);
+		}
+		try {
+			nfa.determinize(ba, new DeterminizationBudget(Integer.MAX_VALUE, 5, Long.MAX_VALUE), Long.MAX_VALUE);
+			assertTrue(false);
+		} catch (BudgetExceededException e) {
+			assertTrue(e.getResource() == Resource.TRANSITIONS);
+			assertTrue(e.getTransitions() == 6);
+		}
+	}
+
+	@Test
+	public void testLazyDeterministicSFA() throws TimeoutException {
+		// the n-th symbol from the end is an a
+		int n = 12;
+		List<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 0, ba.True()));
+		transitions.add(new SFAInputMove<CharPred, Character>(0, 1, new CharPred('a')));
+		for (int i = 1; i < n; i++)
+			transitions.add(new SFAInputMove<CharPred, Character>(i, i + 1, ba.True()));
+		SFA<CharPred, Character> nfa = SFA.MkSFA(transitions, 0, Arrays.asList(n), ba);
+
+		LazyDeterministicSFA<CharPred, Character> lazy = new LazyDeterministicSFA<>(nfa, ba, 4);
+		List<Character> word = lOfS("xxaxxxxxxxxxxx");
+		assertTrue(lazy.accepts(word) == nfa.accepts(word, ba));
+		assertTrue(lazy.accepts(lOfS("aaaaaaaaaaaa")));
+		assertFalse(lazy.accepts(lOfS("bbbbbbbbbbbb")));
+
+		// a shortest witness is found after expanding a few states
+		List<Character> witness = lazy.getWitness(Long.MAX_VALUE);
+		assertTrue(witness.size() == n);
+		assertTrue(nfa.accepts(witness, ba));
+		assertTrue(lazy.getCachedStates() <= 4);
+		assertTrue(lazy.getMisses() < 1 << n);
+
+		// products with other views
+		LazyDeterministicSFA<CharPred, Character> lazyA = new LazyDeterministicSFA<>(autA, ba);
+		LazyDeterministicSFA<CharPred, Character> lazyB = new LazyDeterministicSFA<>(autB, ba);
+		List<Character> inters = LazyDeterministicSFA.getIntersectionWitness(lazyA, lazyB, Long.MAX_VALUE);
+		assertTrue(autA.accepts(inters, ba) && autB.accepts(inters, ba));
+		List<Character> dist = LazyDeterministicSFA.getDistinguishingWitness(lazyA, lazyB, Long.MAX_VALUE);
+		assertTrue(autA.accepts(dist, ba) != autB.accepts(dist, ba));
+		LazyDeterministicSFA<CharPred, Character> lazyCA = new LazyDeterministicSFA<>(
+				autA.complement(ba).complement(ba), ba);
+		assertTrue(LazyDeterministicSFA.getDistinguishingWitness(lazyA, lazyCA, Long.MAX_VALUE) == null);
+		assertTrue(new LazyDeterministicSFA<>(getEmptySFA(), ba).isEmpty(Long.MAX_VALUE));
+	}
+
 	public SFA<CharPred, Character> getEmptySFA() throws TimeoutException {
 		Collection<SFAMove<CharPred, Character>> transitions = new LinkedList<>();
 
@@ -332,6 +663,68 @@ public class SFAUnitTest {
 		assertFalse(sfaPlusMA.isEmpty());
 	}
 
+	@Test
+	public void testCompile() throws TimeoutException {
+		SFA<CharPred, Character> autBMin = autB.minimize(ba);
+		CompiledCharSFA compA = SFA.compile(autA, ba);
+		CompiledCharSFA compB = SFA.compile(autBMin, ba);
+
+		for (String s : Arrays.asList("", "aa", "a3", "a", "44", "z09", "\u00e0a", "ab3")) {
+			assertTrue(compA.matches(s) == autA.accepts(lOfS(s), ba));
+			assertTrue(compB.matches(s) == autB.accepts(lOfS(s), ba));
+		}
+
+		assertTrue(compB.stateCount() == autBMin.stateCount());
+	}
+
+	@Test
+	public void testCompactRepresentation() throws TimeoutException {
+		CompactSFA<CharPred, Character> compB = autB.getCompactRepresentation();
+
+		assertTrue(compB.stateCount() == autB.stateCount());
+		assertTrue(compB.getState(0) == autB.getInitialState());
+		assertTrue(compB.moveCount() == autB.getTransitionCount());
+
+		for (int id = 0; id < compB.stateCount(); id++) {
+			int state = compB.getState(id);
+			assertTrue(compB.getId(state) == id);
+			assertTrue(compB.isFinal(id) == autB.isFinalState(state));
+			assertTrue(compB.outEnd(id) - compB.outBegin(id) == autB.getInputMovesFrom(state).size());
+			assertTrue(compB.inEnd(id) - compB.inBegin(id) == autB.getInputMovesTo(state).size());
+		}
+
+		CompactSFA<CharPred, Character> compA = autA.getCompactRepresentation();
+		assertTrue(compA.getEpsClosure(0).length == 2);
+	}
+
+	@Test
+	public void testCompactRepresentationSparseStates() throws TimeoutException {
+		for (int other : new int[] { -5, 2000000000 }) {
+			List<SFAMove<CharPred, Character>> transitions = new LinkedList<SFAMove<CharPred, Character>>();
+			transitions.add(new SFAInputMove<CharPred, Character>(0, other, a));
+			transitions.add(new SFAEpsilon<CharPred, Character>(other, 0));
+			SFA<CharPred, Character> aut = SFA.MkSFA(transitions, 0, Arrays.asList(other), ba);
+
+			CompactSFA<CharPred, Character> comp = aut.getCompactRepresentation();
+			assertTrue(comp.stateCount() == 2);
+			assertTrue(comp.getId(0) == 0 && comp.getId(other) == 1);
+			assertTrue(comp.getId(1) == -1);
+			assertTrue(comp.getEpsClosure(1).length == 2);
+
+			SFA<CharPred, Character> inters = aut.intersectionWith(aut, ba);
+			assertTrue(inters.stateCount() == 2);
+			assertTrue(inters.accepts(lOfS("aa"), ba));
+		}
+	}
+
+	private static List<String> sortedMoves(SFA<CharPred, Character> aut) {
+		List<String> moves = new ArrayList<String>();
+		for (SFAMove<CharPred, Character> move : aut.getTransitions())
+			moves.add(move.toString());
+		Collections.sort(moves);
+		return moves;
+	}
+
 	// ---------------------------------------
 	// Predicates
 	// ---------------------------------------
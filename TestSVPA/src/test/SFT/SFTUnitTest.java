@@ -7,6 +7,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -21,11 +24,15 @@ import transducers.sft.SFT;
 import transducers.sft.SFTMove;
 import transducers.sft.SFTInputMove;
 import transducers.sft.SFTEpsilon;
+import transducers.sft.CharSFTTable;
+import transducers.sft.SFTPipeline;
+import transducers.sft.SFTRunner;
 import automata.sfa.SFA;
 import automata.sfa.SFAMove;
 import automata.sfa.SFAInputMove;
 
 import theory.intervals.UnaryCharIntervalSolver;
+import org.sat4j.specs.TimeoutException;
 
 /**
 * SFT Tester.
@@ -644,6 +651,143 @@ public class SFTUnitTest {
 		// it is tested in method testCompose
 	}
 
+	/**
+	 *
+	 * Class: SFTRunner
+	 *
+	 */
+	@Test
+	public void testSFTRunner() throws Exception {
+		String[] inputs = {"", "a", "b", "ab", "bb", "abcz", "bcsaee", "1b- *&@3"};
+		int checked = 0;
+		for (SFT<CharPred, CharFunc, Character> sft: allSFTs) {
+			// the reference implementation does not remove epsilon transitions
+			if (!sft.isEpsilonFree())
+				continue;
+			checked++;
+			SFTRunner<CharPred, CharFunc, Character> runner = new SFTRunner<CharPred, CharFunc, Character>(sft, ba);
+			for (String input: inputs) {
+				List<Character> expected = backtrackOutputOn(sft, stringToListOfCharacter(input));
+				StringWriter out = new StringWriter();
+				boolean accepted = SFTRunner.transduce(runner, new StringReader(input), out);
+				assertEquals(expected != null, accepted);
+				if (accepted)
+					assertEquals(ba.stringOfList(expected), out.toString());
+			}
+		}
+		assertTrue(checked > 0);
+
+		// a deterministic SFT streams a long input without buffering it
+		StringBuilder longInput = new StringBuilder();
+		StringBuilder longOutput = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			longInput.append(i % 2 == 0 ? 'a' : 'b');
+			longOutput.append(i % 2 == 0 ? "a" : "cd");
+		}
+		SFTRunner<CharPred, CharFunc, Character> runner131 = new SFTRunner<CharPred, CharFunc, Character>(mySFT131, ba);
+		assertTrue(runner131.isDeterministic());
+		StringWriter out = new StringWriter();
+		assertTrue(SFTRunner.transduce(runner131, CharBuffer.wrap(longInput), out));
+		assertEquals(longOutput.toString(), out.toString());
+
+		SFTRunner<CharPred, CharFunc, Character>.Run run = runner131.start();
+		assertTrue(run.feed('b'));
+		assertEquals(stringToListOfCharacter("cd"), run.takeOutput());
+		assertFalse(run.feed('z'));
+		assertFalse(run.finish());
+
+		// nondeterministic SFT, the output is written once a single path is left
+		List<SFTMove<CharPred, CharFunc, Character>> transitions = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> outputX = new ArrayList<CharFunc>();
+		outputX.add(new CharConstant('x'));
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 1, new CharPred('a'), outputX));
+		List<CharFunc> outputY = new ArrayList<CharFunc>();
+		outputY.add(new CharConstant('y'));
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 2, new CharPred('a'), outputY));
+		List<CharFunc> identity = new ArrayList<CharFunc>();
+		identity.add(CharOffset.IDENTITY);
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(1, 3, new CharPred('b'), identity));
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(2, 3, new CharPred('c'), identity));
+		Map<Integer, Set<List<Character>>> finStatesAndTails = new HashMap<Integer, Set<List<Character>>>();
+		Set<List<Character>> tails = new HashSet<List<Character>>();
+		tails.add(stringToListOfCharacter("!"));
+		finStatesAndTails.put(3, tails);
+		SFT<CharPred, CharFunc, Character> nondet = SFT.MkSFT(transitions, 0, finStatesAndTails, ba);
+
+		SFTRunner<CharPred, CharFunc, Character> nondetRunner = new SFTRunner<CharPred, CharFunc, Character>(nondet, ba);
+		assertFalse(nondetRunner.isDeterministic());
+		run = nondetRunner.start();
+		assertTrue(run.feed('a'));
+		assertEquals(2, run.pathCount());
+		assertTrue(run.takeOutput().isEmpty());
+		assertTrue(run.feed('c'));
+		assertEquals(1, run.pathCount());
+		assertEquals(stringToListOfCharacter("yc"), run.takeOutput());
+		assertTrue(run.finish());
+		assertEquals(stringToListOfCharacter("!"), run.takeOutput());
+
+		assertEquals(stringToListOfCharacter("xb!"), nondetRunner.outputOn(stringToListOfCharacter("ab")));
+		assertEquals(null, nondetRunner.outputOn(stringToListOfCharacter("a")));
+	}
+
+	/**
+	 *
+	 * Class: CharSFTTable
+	 *
+	 */
+	@Test
+	public void testCharSFTTable() throws Exception {
+		String[] inputs = {"", "a", "b", "ab", "bb", "bbcb", "abcz", "bcsaee", "1b- *&@3"};
+		int compiled = 0;
+		for (SFT<CharPred, CharFunc, Character> sft: allSFTs) {
+			CharSFTTable table = CharSFTTable.compile(sft, ba);
+			SFTRunner<CharPred, CharFunc, Character> runner = new SFTRunner<CharPred, CharFunc, Character>(sft, ba);
+			assertEquals(runner.isDeterministic(), table != null);
+			assertEquals(table != null, runner.getCharTable() != null);
+			if (table == null)
+				continue;
+			compiled++;
+			for (String input: inputs) {
+				// the generic run of the runner does not use the table
+				List<Character> expected = sft.isEpsilonFree() ? backtrackOutputOn(sft, stringToListOfCharacter(input))
+						: runner.outputOn(stringToListOfCharacter(input));
+				String output = table.outputOn(input);
+				if (expected == null)
+					assertEquals(null, output);
+				else
+					assertEquals(ba.stringOfList(expected), output);
+			}
+		}
+		assertTrue(compiled > 0);
+
+		// offsets are applied on chars and snapped to the range of chars
+		List<SFTMove<CharPred, CharFunc, Character>> transitions = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> outputs = new ArrayList<CharFunc>();
+		outputs.add(new CharOffset(-'b'));
+		outputs.add(CharOffset.TO_UPPER_CASE);
+		outputs.add(new CharConstant('-'));
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 0, new CharPred('a', 'z'), outputs));
+		Map<Integer, Set<List<Character>>> finStatesAndTails = new HashMap<Integer, Set<List<Character>>>();
+		Set<List<Character>> tails = new HashSet<List<Character>>();
+		tails.add(stringToListOfCharacter("."));
+		finStatesAndTails.put(0, tails);
+		SFT<CharPred, CharFunc, Character> upper = SFT.MkSFT(transitions, 0, finStatesAndTails, ba);
+		CharSFTTable table = CharSFTTable.compile(upper, ba);
+		assertEquals(3, table.classCount());
+		assertEquals("\u0000A-\u0001C-.", table.outputOn("ac"));
+		assertEquals(null, table.outputOn("aC"));
+
+		// chunks larger than the buffer
+		StringBuilder longInput = new StringBuilder();
+		for (int i = 0; i < 50000; i++)
+			longInput.append((char) ('a' + i % 26));
+		StringWriter out = new StringWriter();
+		assertTrue(table.transduce(new StringReader(longInput.toString()), out));
+		assertEquals(150001, out.toString().length());
+		assertEquals(ba.stringOfList(upper.outputOn(stringToListOfCharacter(longInput.toString()), ba)),
+				out.toString());
+	}
+
 	/**
 	 *
 	 * Method: composeWith(SFT<P, F, S> sft, BooleanAlgebraSubst<P, F, S> ba)
@@ -722,6 +866,134 @@ public class SFTUnitTest {
 
 	}
 
+	/**
+	 *
+	 * Method: composeWith(SFT<P, F, S> sft, BooleanAlgebraSubst<P, F, S> ba) on long transition chains
+	 *
+	 */
+	@Test
+	public void testComposeWithLongChains() throws Exception {
+		SFT<CharPred, CharFunc, Character> duplicator = mkDuplicator();
+		SFT<CharPred, CharFunc, Character> alternator = mkAlternator();
+
+		List<SFT<CharPred, CharFunc, Character>> stages = new ArrayList<SFT<CharPred, CharFunc, Character>>();
+		stages.add(duplicator);
+		stages.add(alternator);
+		stages.add(duplicator);
+		stages.add(alternator);
+		stages.add(duplicator);
+
+		SFT<CharPred, CharFunc, Character> composed = stages.get(0);
+		for (int i = 1; i < stages.size(); i++)
+			composed = composed.composeWith(stages.get(i), ba);
+
+		String[] inputs = {"", "a", "z", "az", "bcd", "zzz", "1"};
+		for (String input: inputs) {
+			List<Character> expected = stringToListOfCharacter(input);
+			for (SFT<CharPred, CharFunc, Character> stage: stages)
+				if (expected != null)
+					expected = stage.outputOn(expected, ba);
+			assertEquals(expected, composed.outputOn(stringToListOfCharacter(input), ba));
+		}
+	}
+
+	/**
+	 * @return an SFT duplicating every character and appending "ab"
+	 */
+	private static SFT<CharPred, CharFunc, Character> mkDuplicator() throws Exception {
+		List<SFTMove<CharPred, CharFunc, Character>> transitions1 = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> duplicate = new ArrayList<CharFunc>();
+		duplicate.add(CharOffset.IDENTITY);
+		duplicate.add(CharOffset.IDENTITY);
+		transitions1.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 0, ba.True(), duplicate));
+		Map<Integer, Set<List<Character>>> finStatesAndTails1 = new HashMap<Integer, Set<List<Character>>>();
+		Set<List<Character>> tails1 = new HashSet<List<Character>>();
+		tails1.add(stringToListOfCharacter("ab"));
+		finStatesAndTails1.put(0, tails1);
+		return SFT.MkSFT(transitions1, 0, finStatesAndTails1, ba);
+	}
+
+	/**
+	 * @return an SFT incrementing letters at even positions, duplicating 'z', and upper-casing letters at odd
+	 * positions
+	 */
+	private static SFT<CharPred, CharFunc, Character> mkAlternator() throws Exception {
+		List<SFTMove<CharPred, CharFunc, Character>> transitions2 = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> duplicate = new ArrayList<CharFunc>();
+		duplicate.add(CharOffset.IDENTITY);
+		duplicate.add(CharOffset.IDENTITY);
+		List<CharFunc> increment = new ArrayList<CharFunc>();
+		increment.add(new CharOffset(1));
+		List<CharFunc> toUpper = new ArrayList<CharFunc>();
+		toUpper.add(CharOffset.TO_UPPER_CASE);
+		transitions2.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 1, new CharPred('a', 'y'), increment));
+		transitions2.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 1, new CharPred('z'), duplicate));
+		transitions2.add(new SFTInputMove<CharPred, CharFunc, Character>(1, 0, new CharPred('a', 'z'), toUpper));
+		Map<Integer, Set<List<Character>>> finStatesAndTails2 = new HashMap<Integer, Set<List<Character>>>();
+		finStatesAndTails2.put(0, new HashSet<List<Character>>());
+		return SFT.MkSFT(transitions2, 0, finStatesAndTails2, ba);
+	}
+
+	/**
+	 *
+	 * Class: SFTPipeline
+	 *
+	 */
+	@Test
+	public void testSFTPipeline() throws Exception {
+		List<SFT<CharPred, CharFunc, Character>> stages = new ArrayList<SFT<CharPred, CharFunc, Character>>();
+		stages.add(mkDuplicator());
+		stages.add(mkAlternator());
+		stages.add(mkDuplicator());
+		stages.add(mkDuplicator());
+		SFTPipeline<CharPred, CharFunc, Character> pipeline = new SFTPipeline<CharPred, CharFunc, Character>(stages, ba);
+		assertEquals(4, pipeline.size());
+		SFT<CharPred, CharFunc, Character> composed = pipeline.compose();
+
+		String[] inputs = {"", "a", "z", "az", "bcd", "zzz", "1", "ab1"};
+		for (String input: inputs) {
+			List<Character> expected = stringToListOfCharacter(input);
+			for (SFT<CharPred, CharFunc, Character> stage: stages)
+				if (expected != null)
+					expected = stage.outputOn(expected, ba);
+			assertEquals(expected, pipeline.outputOn(stringToListOfCharacter(input)));
+			assertEquals(expected, composed.outputOn(stringToListOfCharacter(input), ba));
+
+			StringWriter out = new StringWriter();
+			assertEquals(expected != null, SFTPipeline.transduce(pipeline, new StringReader(input), out));
+			if (expected != null)
+				assertEquals(ba.stringOfList(expected), out.toString());
+		}
+
+		// a nondeterministic stage runs through the generic runners
+		List<SFTMove<CharPred, CharFunc, Character>> transitions = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> identity = new ArrayList<CharFunc>();
+		identity.add(CharOffset.IDENTITY);
+		List<CharFunc> none = new ArrayList<CharFunc>();
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 0, ba.True(), identity));
+		transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(0, 1, new CharPred('b'), none));
+		Map<Integer, Set<List<Character>>> finStatesAndTails = new HashMap<Integer, Set<List<Character>>>();
+		finStatesAndTails.put(1, new HashSet<List<Character>>());
+		SFT<CharPred, CharFunc, Character> dropLastB = SFT.MkSFT(transitions, 0, finStatesAndTails, ba);
+		stages.clear();
+		stages.add(mkDuplicator());
+		stages.add(dropLastB);
+		stages.add(mkDuplicator());
+		pipeline = new SFTPipeline<CharPred, CharFunc, Character>(stages, ba);
+
+		StringBuilder longInput = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			longInput.append((char) ('a' + i % 26));
+		List<Character> expected = stringToListOfCharacter(longInput.toString());
+		for (SFT<CharPred, CharFunc, Character> stage: stages)
+			expected = stage.outputOn(expected, ba);
+		StringWriter out = new StringWriter();
+		assertEquals(40004, expected.size());
+		assertTrue(SFTPipeline.transduce(pipeline, new StringReader(longInput.toString()), out));
+		assertEquals(ba.stringOfList(expected), out.toString());
+		assertEquals(expected, pipeline.outputOn(stringToListOfCharacter(longInput.toString())));
+	}
+
 	/**
 	 *
 	 * Method: compose(SFT<P, F, S> sft1withEps, SFT<P, F, S> sft2withEps, BooleanAlgebraSubst<P, F, S> ba)
@@ -747,6 +1019,48 @@ public class SFTUnitTest {
 		return output;
 	}
 
+	/**
+	 * reference implementation of outputOn exploring every path by backtracking, used to check the runners
+	 * @param sft an SFT without epsilon transitions
+	 * @param input a list of characters
+	 * @return the first output found, null if undefined
+	 */
+	private static List<Character> backtrackOutputOn(SFT<CharPred, CharFunc, Character> sft, List<Character> input)
+			throws TimeoutException {
+		assertTrue(sft.isEpsilonFree());
+		List<List<Character>> outputs = new ArrayList<List<Character>>();
+		backtrack(outputs, new ArrayList<Character>(), sft, sft.getInitialState(), input, 0);
+		return outputs.isEmpty() ? null : outputs.get(0);
+	}
+
+	private static void backtrack(List<List<Character>> outputs, List<Character> tempList,
+								  SFT<CharPred, CharFunc, Character> sft, Integer currentState, List<Character> input,
+								  int position) throws TimeoutException {
+		if (position == input.size()) {
+			if (sft.isFinalState(currentState)) {
+				if (sft.getFinalStatesAndTails().get(currentState).size() == 0) {
+					outputs.add(new ArrayList<Character>(tempList));
+				} else {
+					for (List<Character> tail: sft.getFinalStatesAndTails().get(currentState)) {
+						List<Character> finalResult = new ArrayList<Character>(tempList);
+						finalResult.addAll(tail);
+						outputs.add(finalResult);
+					}
+				}
+			}
+			return;
+		}
+		for (SFTInputMove<CharPred, CharFunc, Character> transition: sft.getInputMovesFrom(currentState)) {
+			if (ba.HasModel(transition.guard, input.get(position))) {
+				for (CharFunc outputFunc: transition.outputFunctions)
+					tempList.add(ba.MkSubstFuncConst(outputFunc, input.get(position)));
+				backtrack(outputs, tempList, sft, transition.to, input, position + 1);
+				for (int i = 0; i < transition.outputFunctions.size(); i++)
+					tempList.remove(tempList.size() - 1);
+			}
+		}
+	}
+
 	/**
 	 *
 	 * Method: decide1equality(SFT<P, F, S> otherSft, BooleanAlgebraSubst<P, F, S> ba)
@@ -1092,6 +1406,55 @@ public class SFTUnitTest {
 		}
 	}
 
+	/**
+	 *
+	 * Method: decide1equality and witness1disequality on pairs of states that do not reach final states
+	 *
+	 */
+	@Test
+	public void testDecide1equalityDeadStates() throws Exception {
+		// a chain of n identity moves on 'a' to a final state, and from every state of the chain a move on 'b' to a
+		// state that is not final, whose output depends on the given constant
+		int n = 50;
+		List<SFT<CharPred, CharFunc, Character>> sfts = new ArrayList<SFT<CharPred, CharFunc, Character>>();
+		for (char deadOutput : new char[] {'x', 'y'}) {
+			List<SFTMove<CharPred, CharFunc, Character>> transitions = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+			List<CharFunc> identity = new ArrayList<CharFunc>();
+			identity.add(CharOffset.IDENTITY);
+			List<CharFunc> constant = new ArrayList<CharFunc>();
+			constant.add(new CharConstant(deadOutput));
+			for (int i = 0; i < n; i++) {
+				transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(i, i + 1, new CharPred('a'), identity));
+				transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(i, n + 1, new CharPred('b'), constant));
+			}
+			transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(n + 1, n + 1, ba.True(), constant));
+			Map<Integer, Set<List<Character>>> finStatesAndTails = new HashMap<Integer, Set<List<Character>>>();
+			finStatesAndTails.put(n, new HashSet<List<Character>>());
+			sfts.add(SFT.MkSFT(transitions, 0, finStatesAndTails, ba));
+		}
+		// the moves on 'b' never lead to an accepted input
+		assertTrue(sfts.get(0).decide1equality(sfts.get(1), ba));
+		assertEquals(null, sfts.get(0).witness1disequality(sfts.get(1), ba));
+
+		// the same chain where the last move outputs a constant
+		List<SFTMove<CharPred, CharFunc, Character>> transitions = new LinkedList<SFTMove<CharPred, CharFunc, Character>>();
+		List<CharFunc> identity = new ArrayList<CharFunc>();
+		identity.add(CharOffset.IDENTITY);
+		List<CharFunc> constant = new ArrayList<CharFunc>();
+		constant.add(new CharConstant('z'));
+		for (int i = 0; i < n; i++)
+			transitions.add(new SFTInputMove<CharPred, CharFunc, Character>(i, i + 1, new CharPred('a'),
+					i == n - 1 ? constant : identity));
+		Map<Integer, Set<List<Character>>> finStatesAndTails = new HashMap<Integer, Set<List<Character>>>();
+		finStatesAndTails.put(n, new HashSet<List<Character>>());
+		SFT<CharPred, CharFunc, Character> different = SFT.MkSFT(transitions, 0, finStatesAndTails, ba);
+
+		assertFalse(sfts.get(0).decide1equality(different, ba));
+		List<Character> witness = sfts.get(0).witness1disequality(different, ba);
+		assertEquals(n, witness.size());
+		assertFalse(sfts.get(0).outputOn(witness, ba).equals(different.outputOn(witness, ba)));
+	}
+
 	@Test
 	public void testadd() throws Exception {
 
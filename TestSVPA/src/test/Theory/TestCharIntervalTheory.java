@@ -0,0 +1,171 @@
+package test.Theory;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sat4j.specs.TimeoutException;
+
+import theory.MintermCache;
+import theory.characters.CharPred;
+import theory.characters.PackedCharPred;
+import theory.characters.StdCharPred;
+import theory.intervals.PackedCharIntervalSolver;
+import theory.intervals.UnaryCharIntervalSolver;
+import utilities.Pair;
+
+public class TestCharIntervalTheory {
+
+	UnaryCharIntervalSolver ba = new UnaryCharIntervalSolver();
+
+	@Test
+	public void testMinterms() throws TimeoutException {
+		ArrayList<CharPred> predicates = new ArrayList<CharPred>();
+		predicates.add(StdCharPred.ALPHA);
+		predicates.add(StdCharPred.LOWER_ALPHA);
+		predicates.add(StdCharPred.XDIGIT);
+		predicates.add(new CharPred('a'));
+		predicates.add(StdCharPred.TRUE);
+		predicates.add(StdCharPred.FALSE);
+		predicates.add(new CharPred(CharPred.MAX_CHAR));
+		assertSameMinterms(predicates);
+
+		assertSameMinterms(new ArrayList<CharPred>());
+
+		Random r = new Random(0);
+		for (int test = 0; test < 20; test++) {
+			predicates = new ArrayList<CharPred>();
+			for (int i = 0; i < 6; i++) {
+				CharPred p = ba.False();
+				for (int j = 0; j < 3; j++) {
+					char lo = (char) r.nextInt(200);
+					p = ba.MkOr(p, new CharPred(lo, (char) (lo + r.nextInt(20))));
+				}
+				predicates.add(p);
+			}
+			assertSameMinterms(predicates);
+		}
+	}
+
+	@Test
+	public void testMintermCache() throws TimeoutException {
+		MintermCache<CharPred> cache = new MintermCache<CharPred>();
+
+		ArrayList<CharPred> predicates = new ArrayList<CharPred>();
+		predicates.add(StdCharPred.ALPHA);
+		predicates.add(StdCharPred.XDIGIT);
+		Collection<Pair<CharPred, ArrayList<Integer>>> first = cache.getMinterms(predicates, ba, Long.MAX_VALUE);
+		Collection<Pair<CharPred, ArrayList<Integer>>> second = cache.getMinterms(predicates, ba, Long.MAX_VALUE);
+
+		assertTrue(first == second);
+		assertTrue(cache.getHits() == 1);
+
+		predicates.add(StdCharPred.NUM);
+		assertTrue(cache.getMinterms(predicates, ba, Long.MAX_VALUE).size() == 4);
+		assertTrue(cache.getPartialHits() == 1);
+		assertTrue(cache.getLookups() == 3);
+		assertTrue(cache.size() == 3);
+
+		cache.clear();
+		assertTrue(cache.size() == 0);
+		assertTrue(cache.getMinterms(predicates, ba, Long.MAX_VALUE).size() == 4);
+	}
+
+	@Test
+	public void testMkOr() {
+		Random r = new Random(1);
+		for (int test = 0; test < 100; test++) {
+			CharPred p1 = randomPred(r);
+			CharPred p2 = randomPred(r);
+			CharPred deMorgan = ba.MkNot(ba.MkAnd(ba.MkNot(p1), ba.MkNot(p2)));
+			assertTrue(ba.MkOr(p1, p2).equals(deMorgan));
+		}
+	}
+
+	@Test
+	public void testPackedCharPred() throws TimeoutException {
+		PackedCharIntervalSolver pba = new PackedCharIntervalSolver();
+		Random r = new Random(2);
+		for (int test = 0; test < 100; test++) {
+			CharPred p1 = randomPred(r);
+			CharPred p2 = randomPred(r);
+			PackedCharPred q1 = PackedCharPred.of(p1);
+			PackedCharPred q2 = PackedCharPred.of(p2);
+
+			assertTrue(q1.toCharPred().equals(p1));
+			assertTrue(pba.MkAnd(q1, q2).toCharPred().equals(ba.MkAnd(p1, p2)));
+			assertTrue(pba.MkOr(q1, q2).toCharPred().equals(ba.MkOr(p1, p2)));
+			assertTrue(pba.MkNot(q1).toCharPred().equals(ba.MkNot(p1)));
+			assertTrue(pba.AreEquivalent(q1, q2) == ba.AreEquivalent(p1, p2));
+
+			for (int c = 0; c < 256; c++)
+				assertTrue(pba.HasModel(q1, (char) c) == ba.HasModel(p1, (char) c));
+
+			ArrayList<PackedCharPred> packed = new ArrayList<PackedCharPred>();
+			packed.add(q1);
+			packed.add(q2);
+			ArrayList<CharPred> unpacked = new ArrayList<CharPred>();
+			unpacked.add(p1);
+			unpacked.add(p2);
+			assertTrue(pba.GetMinterms(packed).size() == ba.GetMinterms(unpacked).size());
+		}
+
+		assertTrue(pba.MkNot(pba.False()).equals(pba.True()));
+		assertTrue(pba.HasModel(pba.True(), CharPred.MAX_CHAR));
+		assertTrue(!pba.IsSatisfiable(pba.MkAnd(pba.MkAtom('a'), pba.MkAtom('b'))));
+	}
+
+	@Test
+	public void testInterning() throws TimeoutException {
+		UnaryCharIntervalSolver iba = new UnaryCharIntervalSolver(true);
+		Random r = new Random(3);
+		for (int test = 0; test < 100; test++) {
+			CharPred p1 = randomPred(r);
+			CharPred p2 = randomPred(r);
+
+			CharPred and = iba.MkAnd(p1, p2);
+			assertTrue(and.equals(ba.MkAnd(p1, p2)));
+			assertTrue(and == iba.MkAnd(p2, p1));
+			assertTrue(and == iba.intern(ba.MkAnd(p1, p2)));
+
+			CharPred or = iba.MkOr(p1, p2);
+			assertTrue(or.equals(ba.MkOr(p1, p2)));
+			assertTrue(or == iba.MkOr(new CharPred(p2.intervals), p1));
+
+			assertTrue(iba.MkNot(iba.MkNot(p1)) == iba.intern(p1));
+			assertTrue(iba.AreEquivalent(p1, p2) == ba.AreEquivalent(p1, p2));
+		}
+
+		assertTrue(iba.MkNot(iba.False()) == iba.True());
+		assertTrue(iba.MkOr(StdCharPred.LOWER_ALPHA, StdCharPred.UPPER_ALPHA) == iba.intern(StdCharPred.ALPHA));
+	}
+
+	private CharPred randomPred(Random r) {
+		CharPred p = ba.False();
+		for (int j = 0; j < r.nextInt(4); j++) {
+			char lo = (char) r.nextInt(200);
+			p = ba.MkOr(p, new CharPred(lo, (char) (lo + r.nextInt(20))));
+		}
+		return p;
+	}
+
+	// compares the minterms of the solver with the generic refinement
+	private void assertSameMinterms(ArrayList<CharPred> predicates) throws TimeoutException {
+		Collection<Pair<CharPred, ArrayList<Integer>>> sweep = ba.GetMinterms(predicates);
+		Collection<Pair<CharPred, ArrayList<Integer>>> generic = new MintermCache<CharPred>()
+				.getMinterms(predicates, ba, Long.MAX_VALUE);
+
+		Map<ArrayList<Integer>, CharPred> expected = new HashMap<ArrayList<Integer>, CharPred>();
+		for (Pair<CharPred, ArrayList<Integer>> minterm : generic)
+			expected.put(minterm.second, minterm.first);
+
+		assertTrue(sweep.size() == generic.size());
+		for (Pair<CharPred, ArrayList<Integer>> minterm : sweep)
+			assertTrue(ba.AreEquivalent(minterm.first, expected.get(minterm.second)));
+	}
+}